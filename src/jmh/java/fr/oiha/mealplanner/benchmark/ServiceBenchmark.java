@@ -0,0 +1,97 @@
+package fr.oiha.mealplanner.benchmark;
+
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.MealPlan;
+import fr.oiha.mealplanner.model.ShoppingList;
+import fr.oiha.mealplanner.service.DataStorageService;
+import fr.oiha.mealplanner.service.GenerationMode;
+import fr.oiha.mealplanner.service.MealPlannerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the MealPlannerService read paths, on synthetic catalogs of increasing size.
+ * MealPlannerService is a singleton reading its data directory on first use,
+ * so each catalog size needs its own JVM: the benchmarks must run forked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ServiceBenchmark {
+    private static final double WEEK_BUDGET = 70.0;
+    private static final int WEEK_MEALS = 7;
+
+    @Param({"100", "10000", "100000", "1000000"})
+    public int mealCount;
+
+    private File dataDirectory;
+    private MealPlannerService service;
+    private Meal[] meals;
+    private MealPlan plan;
+    private File markdown;
+    private int mealIndex;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataDirectory = SyntheticCatalog.createDataDirectory();
+        SyntheticCatalog catalog = SyntheticCatalog.generate(mealCount);
+        DataStorageService.saveProductSnapshot(catalog.products);
+        DataStorageService.saveMealSnapshot(catalog.meals, catalog.products);
+
+        service = MealPlannerService.getInstance();
+        meals = service.getCatalog().getMeals().toArray(new Meal[0]);
+        Arrays.sort(meals, Comparator.comparingInt(Meal::getId));
+        // Also builds the plan generator, which is then reused by every generation
+        plan = service.generateMealPlan(WEEK_BUDGET, WEEK_MEALS, GenerationMode.RANDOM, 1);
+        markdown = new File(dataDirectory, "plan.md");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.flush();
+        SyntheticCatalog.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public double calculateMealCost() {
+        if (++mealIndex == meals.length) {
+            mealIndex = 0;
+        }
+        return service.calculateMealCost(meals[mealIndex]);
+    }
+
+    @Benchmark
+    public MealPlan generateMealPlan() {
+        return service.generateMealPlan(WEEK_BUDGET, WEEK_MEALS, GenerationMode.RANDOM, seed++);
+    }
+
+    @Benchmark
+    public ShoppingList generateShoppingList() {
+        return service.generateShoppingList(plan);
+    }
+
+    @Benchmark
+    public boolean exportMealPlanToMarkdown() {
+        return service.exportMealPlanToMarkdown(plan, markdown.getPath());
+    }
+}
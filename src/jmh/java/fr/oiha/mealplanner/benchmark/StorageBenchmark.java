@@ -0,0 +1,82 @@
+package fr.oiha.mealplanner.benchmark;
+
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.service.DataStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading and saving the meals, as JSON and as binary snapshots,
+ * on synthetic catalogs of increasing size.
+ * An operation reads or writes the whole meal file, so the average time of an operation is reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StorageBenchmark {
+    @Param({"100", "10000", "100000", "1000000"})
+    public int mealCount;
+
+    private File dataDirectory;
+    private SyntheticCatalog catalog;
+    private Product[] productsById;
+    private final DataStorageService storageService = new DataStorageService();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataDirectory = SyntheticCatalog.createDataDirectory();
+        catalog = SyntheticCatalog.generate(mealCount);
+        productsById = catalog.products.toArray(new Product[0]);
+        DataStorageService.saveProducts(catalog.products);
+        DataStorageService.saveMeals(catalog.meals, catalog.products);
+        DataStorageService.saveProductSnapshot(catalog.products);
+        DataStorageService.saveMealSnapshot(catalog.meals, catalog.products);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCatalog.deleteDataDirectory(dataDirectory);
+    }
+
+    private Product product(int id) {
+        return id >= 0 && id < productsById.length ? productsById[id] : null;
+    }
+
+    @Benchmark
+    public int loadMeals(Blackhole blackhole) {
+        return storageService.loadMeals(this::product, blackhole::consume);
+    }
+
+    @Benchmark
+    public void saveMeals() {
+        DataStorageService.saveMeals(catalog.meals, catalog.products);
+    }
+
+    @Benchmark
+    public int loadMealSnapshot(Blackhole blackhole) {
+        return storageService.loadMealSnapshot(this::product, null, blackhole::consume);
+    }
+
+    @Benchmark
+    public void saveMealSnapshot() {
+        DataStorageService.saveMealSnapshot(catalog.meals, catalog.products);
+    }
+}
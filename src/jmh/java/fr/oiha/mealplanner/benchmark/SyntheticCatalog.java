@@ -0,0 +1,70 @@
+package fr.oiha.mealplanner.benchmark;
+
+import fr.oiha.mealplanner.cli.CatalogGenerator;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.service.DataStorageService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic catalog for the benchmarks, generated by CatalogGenerator with its default shape and seed,
+ * so every run benchmarks the same products and meals.
+ */
+class SyntheticCatalog {
+    final List<Product> products;
+    final List<Meal> meals;
+
+    private SyntheticCatalog(List<Product> products, List<Meal> meals) {
+        this.products = products;
+        this.meals = meals;
+    }
+
+    /**
+     * Generates a catalog.
+     * @param mealCount the number of meals
+     * @return the catalog
+     */
+    static SyntheticCatalog generate(int mealCount) {
+        CatalogGenerator generator = new CatalogGenerator(mealCount);
+        List<Product> products = new ArrayList<>(generator.getProductCount());
+        generator.forEachProduct(products::add);
+        List<Meal> meals = new ArrayList<>(mealCount);
+        generator.forEachMeal(products::get, meals::add);
+        return new SyntheticCatalog(products, meals);
+    }
+
+    /**
+     * Creates a temporary data directory and makes it the data directory of the application.
+     * @return the directory
+     */
+    static File createDataDirectory() {
+        try {
+            File directory = Files.createTempDirectory("mealplanner-jmh").toFile();
+            System.setProperty(DataStorageService.DATA_DIRECTORY_PROPERTY, directory.getPath());
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes a data directory and its files.
+     * @param directory the directory
+     */
+    static void deleteDataDirectory(File directory) {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
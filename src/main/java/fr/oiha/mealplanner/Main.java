@@ -1,11 +1,151 @@
 package fr.oiha.mealplanner;
 
+import fr.oiha.mealplanner.cli.BatchRunner;
+import fr.oiha.mealplanner.cli.CatalogGenerator;
 import fr.oiha.mealplanner.gui.frame.MainFrame;
+import fr.oiha.mealplanner.server.ApiServer;
+import fr.oiha.mealplanner.service.FlightRecording;
+import fr.oiha.mealplanner.service.MealPlannerService;
+import fr.oiha.mealplanner.service.ServiceMetrics;
 
 import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Entry point of the meal planner.
+ * Without arguments, it opens the Swing user interface.
+ * With --server [port], it runs headless and serves the HTTP/JSON API of ApiServer instead,
+ * and with --batch file [threads], it runs the plan requests of the file with BatchRunner and exits,
+ * both without loading any AWT or Swing class.
+ * With --generate directory mealCount [name=value...], it writes a synthetic catalog
+ * of CatalogGenerator to the directory and exits.
+ * With --export, it writes the catalog back to "products.json" and "meals.json", headless, and exits.
+ * With --compact, it rewrites the product catalog files, folding in the saved product changes, headless, and exits.
+ * Other arguments, or invalid numbers, print the usage and exit with status 2.
+ * In every mode, a flight recording is started first when the "mealplanner.recording" system property is set.
+ */
 public class Main {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: MealPlanner [--server [port] | --batch file [threads] | --generate directory mealCount [name=value...] | --export | --compact]",
+            "  (no argument)      opens the user interface",
+            "  --server [port]    serves the HTTP/JSON API, on port " + ApiServer.DEFAULT_PORT + " by default",
+            "  --batch            runs the plan requests of a file, on one thread per processor by default",
+            "  --generate         writes a synthetic catalog to a directory",
+            "  --export           writes the catalog back to products.json and meals.json",
+            "  --compact          rewrites the product catalog files, folding in the saved product changes");
+
     public static void main(String[] args) {
+        FlightRecording.startFromSystemProperty();
+        if (args.length == 0) {
+            launchGui();
+        } else if (args[0].equals("--server") && args.length <= 2) {
+            int port = args.length > 1 ? intArgument("port", args[1], 0, 65535) : ApiServer.DEFAULT_PORT;
+            launchServer(port);
+        } else if (args[0].equals("--batch") && (args.length == 2 || args.length == 3)) {
+            int threads = args.length > 2
+                    ? intArgument("threads", args[2], 1, Integer.MAX_VALUE)
+                    : Runtime.getRuntime().availableProcessors();
+            launchBatch(new File(args[1]), threads);
+        } else if (args[0].equals("--generate") && args.length > 2) {
+            int mealCount = intArgument("mealCount", args[2], 0, Integer.MAX_VALUE);
+            launchGenerator(new File(args[1]), mealCount, Arrays.asList(args).subList(3, args.length));
+        } else if (args[0].equals("--export") && args.length == 1) {
+            launchExport();
+        } else if (args[0].equals("--compact") && args.length == 1) {
+            launchCompaction();
+        } else {
+            exitWithUsage("Invalid arguments: " + String.join(" ", args));
+        }
+    }
+
+    /**
+     * Parses a numeric argument, exiting with the usage if it is not a number in the given range.
+     */
+    private static int intArgument(String name, String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below, as a value out of range
+        }
+        exitWithUsage(name + " must be an integer " + (max == Integer.MAX_VALUE ? "of at least " + min : "from " + min + " to " + max)
+                + ", not " + value);
+        return min;
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    private static void launchGui() {
         SwingUtilities.invokeLater(MainFrame::new);
     }
+
+    private static void launchBatch(File requests, int threads) {
+        System.setProperty("java.awt.headless", "true");
+        int status = new BatchRunner(MealPlannerService.getInstance(), threads).run(requests);
+        MealPlannerService.getInstance().flush();
+        if (ServiceMetrics.isEnabled()) {
+            System.out.print(ServiceMetrics.dumpText());
+        }
+        System.exit(status);
+    }
+
+    private static void launchExport() {
+        System.setProperty("java.awt.headless", "true");
+        MealPlannerService service = MealPlannerService.getInstance();
+        boolean exported = service.exportCatalogToJson();
+        service.flush();
+        if (exported) {
+            System.out.println("Catalog exported to products.json and meals.json");
+        }
+        System.exit(exported ? 0 : 1);
+    }
+
+    private static void launchCompaction() {
+        System.setProperty("java.awt.headless", "true");
+        MealPlannerService service = MealPlannerService.getInstance();
+        service.flush();
+        boolean compacted = service.compactProductCatalog();
+        if (compacted) {
+            System.out.println("Product catalog compacted");
+        }
+        System.exit(compacted ? 0 : 1);
+    }
+
+    private static void launchGenerator(File directory, int mealCount, List<String> options) {
+        try {
+            CatalogGenerator generator = new CatalogGenerator(mealCount, CatalogGenerator.parseOptions(options));
+            long start = System.nanoTime();
+            generator.write(directory);
+            System.out.printf("%d products and %d meals written to %s in %.1f s%n", generator.getProductCount(),
+                    generator.getMealCount(), directory, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void launchServer(int port) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            ApiServer server = new ApiServer(MealPlannerService.getInstance(), port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "meal-planner-server-stop"));
+            System.out.println("Meal planner API listening on http://localhost:" + server.getPort() + "/api");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package fr.oiha.mealplanner.cli;
+
+import fr.oiha.mealplanner.model.MealPlan;
+import fr.oiha.mealplanner.service.CatalogVersion;
+import fr.oiha.mealplanner.service.GenerationMode;
+import fr.oiha.mealplanner.service.MealPlannerService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BatchRunner generates meal plans from a request file and exports each of them to markdown,
+ * without the user interface.
+ * Each non-empty line of the file is a request "budget;mealCount;seed;output[;mode]",
+ * the mode being RANDOM when it is omitted, and lines starting with # being comments.
+ * The requests run in parallel on a fixed pool of threads, and the throughput
+ * and the latency percentiles of the requests are printed at the end.
+ * Every request is generated from the same catalog version, so they all share its plan generator.
+ * Each request is generated and exported by the same task, rather than generating every plan at once
+ * with MealPlannerService.generateMealPlans, so the latency of a request is its own.
+ * It does not use any AWT or Swing class.
+ */
+public class BatchRunner {
+    private final MealPlannerService service;
+    private final int threads;
+
+    /**
+     * Creates a batch runner.
+     * @param service the service generating and exporting the plans
+     * @param threads the number of requests running at once
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public BatchRunner(MealPlannerService service, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        }
+        this.service = service;
+        this.threads = threads;
+    }
+
+    /**
+     * A line of the request file.
+     */
+    static class Request {
+        private final int line;
+        private final double maxBudget;
+        private final int mealCount;
+        private final long seed;
+        private final String output;
+        private final GenerationMode mode;
+
+        Request(int line, double maxBudget, int mealCount, long seed, String output, GenerationMode mode) {
+            this.line = line;
+            this.maxBudget = maxBudget;
+            this.mealCount = mealCount;
+            this.seed = seed;
+            this.output = output;
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * Reads the requests of a request file.
+     * @param file the request file
+     * @param errors the list receiving a message for each invalid line
+     * @return the valid requests, in the order of the file
+     * @throws IOException if the file cannot be read
+     */
+    static List<Request> readRequests(File file, List<String> errors) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            if (fields.length < 4 || fields.length > 5) {
+                errors.add("Line " + (i + 1) + ": expected budget;mealCount;seed;output[;mode]");
+                continue;
+            }
+            try {
+                double maxBudget = Double.parseDouble(fields[0].trim());
+                int mealCount = Integer.parseInt(fields[1].trim());
+                long seed = Long.parseLong(fields[2].trim());
+                String output = fields[3].trim();
+                GenerationMode mode = fields.length == 5
+                        ? GenerationMode.valueOf(fields[4].trim().toUpperCase(Locale.ROOT))
+                        : GenerationMode.RANDOM;
+                if (maxBudget <= 0 || mealCount <= 0 || output.isEmpty()) {
+                    errors.add("Line " + (i + 1) + ": the budget and the meal count must be positive, and the output set");
+                    continue;
+                }
+                requests.add(new Request(i + 1, maxBudget, mealCount, seed, output, mode));
+            } catch (IllegalArgumentException e) {
+                errors.add("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Runs every request of a request file, then prints the report.
+     * Nothing is run if a line of the file is invalid.
+     * @param file the request file
+     * @return 0 if every plan was exported, 1 if some failed, 2 if the request file is invalid
+     */
+    public int run(File file) {
+        List<String> errors = new ArrayList<>();
+        List<Request> requests;
+        try {
+            requests = readRequests(file, errors);
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+            return 2;
+        }
+        if (!errors.isEmpty()) {
+            errors.forEach(System.err::println);
+            return 2;
+        }
+
+        CatalogVersion catalog = service.getCatalog();
+        long[] latencies = new long[requests.size()];
+        int failures = 0;
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                int index = i;
+                results.add(executor.submit(() -> runRequest(catalog, requests.get(index), latencies, index)));
+            }
+            for (Future<Boolean> result : results) {
+                try {
+                    if (!result.get()) {
+                        failures++;
+                    }
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    failures++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        printReport(requests.size(), failures, elapsed, latencies);
+        return failures == 0 ? 0 : 1;
+    }
+
+    private boolean runRequest(CatalogVersion catalog, Request request, long[] latencies, int index) {
+        long start = System.nanoTime();
+        boolean exported = false;
+        MealPlan plan = service.generateMealPlan(catalog, request.maxBudget, request.mealCount, request.mode, request.seed);
+        if (plan == null || plan.getMeals().isEmpty()) {
+            System.err.println("Line " + request.line + ": no meal fits in the budget");
+        } else {
+            File parent = new File(request.output).getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            exported = service.exportMealPlanToMarkdown(plan, request.output);
+            if (!exported) {
+                System.err.println("Line " + request.line + ": cannot write " + request.output);
+            }
+        }
+        latencies[index] = System.nanoTime() - start;
+        return exported;
+    }
+
+    private void printReport(int count, int failures, long elapsedNanos, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%d plans (%d failed) in %.3f s on %d threads: %.1f plans/s%n",
+                count, failures, seconds, threads, count / seconds);
+        if (count > 0) {
+            System.out.printf(Locale.ROOT, "latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                    percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6,
+                    percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Returns a percentile of sorted values, using the nearest-rank method.
+     */
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
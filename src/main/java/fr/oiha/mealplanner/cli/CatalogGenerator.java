@@ -0,0 +1,321 @@
+package fr.oiha.mealplanner.cli;
+
+import com.google.gson.stream.JsonWriter;
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.Product;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * CatalogGenerator generates synthetic catalogs of any size, for load and scale testing.
+ * The catalog has products 0 to productCount - 1 and meals 0 to mealCount - 1,
+ * and each product and meal is drawn from its own generator, seeded by the seed of the catalog and its ID.
+ * The same seed and shape therefore always give the same catalog,
+ * and any product or meal can be generated alone, without generating the others.
+ * The catalog is written to the products.json and meals.json files read by DataStorageService,
+ * one product or meal at a time, so it is never held in memory whatever its size.
+ * Its shape is set by options "name=value":
+ * <ul>
+ *     <li>products: the number of products, half the number of meals by default (at least 50)</li>
+ *     <li>ingredients: the range of the number of ingredients of a meal, "3-8" by default</li>
+ *     <li>steps: the range of the number of recipe steps of a meal, "3-6" by default</li>
+ *     <li>units: the weight of each unit of the products, "g:4,kg:1,ml:2,l:1,unit:2" by default</li>
+ *     <li>seed: the seed of the catalog, 42 by default</li>
+ * </ul>
+ */
+public class CatalogGenerator {
+    private static final long PRODUCT_SALT = 0x9E3779B97F4A7C15L;
+    private static final long MEAL_SALT = 0xC2B2AE3D27D4EB4FL;
+    private static final String[] ADJECTIVES = {"Fresh", "Smoked", "Organic", "Dried", "Spicy", "Sweet", "Wild", "Roasted"};
+    private static final String[] FOODS = {"Rice", "Pasta", "Chicken", "Beef", "Tomato", "Onion", "Cheese", "Milk",
+            "Lentils", "Carrot", "Salmon", "Potato", "Butter", "Flour", "Egg", "Spinach", "Beans", "Pepper", "Tofu", "Apple"};
+    private static final String[] DISHES = {"Risotto", "Stew", "Salad", "Curry", "Gratin", "Soup", "Pie", "Stir-Fry", "Bowl", "Tart"};
+    private static final String[] STEPS = {"Chop the %s", "Sauté the %s in olive oil", "Boil the %s for 10 minutes",
+            "Season the %s with salt and pepper", "Mix the %s with the rest", "Bake the %s for 20 minutes",
+            "Simmer the %s until tender", "Serve with the %s"};
+
+    private final int mealCount;
+    private final int productCount;
+    private final int minIngredients;
+    private final int maxIngredients;
+    private final int minSteps;
+    private final int maxSteps;
+    private final String[] units;
+    private final long seed;
+
+    /**
+     * Creates a generator with the default shape.
+     * @param mealCount the number of meals
+     */
+    public CatalogGenerator(int mealCount) {
+        this(mealCount, Map.of());
+    }
+
+    /**
+     * Creates a generator.
+     * @param mealCount the number of meals
+     * @param options the shape of the catalog, by option name, the other options keeping their default
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    public CatalogGenerator(int mealCount, Map<String, String> options) {
+        if (mealCount < 0) {
+            throw new IllegalArgumentException("The number of meals must not be negative");
+        }
+        for (String name : options.keySet()) {
+            if (!List.of("products", "ingredients", "steps", "units", "seed").contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        this.mealCount = mealCount;
+        this.productCount = Integer.parseInt(options.getOrDefault("products", String.valueOf(Math.max(50, mealCount / 2))));
+        int[] ingredients = parseRange(options.getOrDefault("ingredients", "3-8"));
+        this.minIngredients = ingredients[0];
+        this.maxIngredients = ingredients[1];
+        int[] steps = parseRange(options.getOrDefault("steps", "3-6"));
+        this.minSteps = steps[0];
+        this.maxSteps = steps[1];
+        this.units = parseUnits(options.getOrDefault("units", "g:4,kg:1,ml:2,l:1,unit:2"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        if (productCount <= 0 && mealCount > 0) {
+            throw new IllegalArgumentException("The number of products must be positive");
+        }
+        if (minIngredients < 1) {
+            throw new IllegalArgumentException("A meal must have at least one ingredient");
+        }
+    }
+
+    /**
+     * Parses the options of the command line.
+     * @param arguments the "name=value" arguments
+     * @return the options, by name
+     * @throws IllegalArgumentException if an argument is not "name=value"
+     */
+    public static Map<String, String> parseOptions(List<String> arguments) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String argument : arguments) {
+            int separator = argument.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=value: " + argument);
+            }
+            options.put(argument.substring(0, separator), argument.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static int[] parseRange(String range) {
+        String[] bounds = range.split("-");
+        int min = Integer.parseInt(bounds[0].trim());
+        int max = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : min;
+        if (bounds.length > 2 || min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid range: " + range);
+        }
+        return new int[]{min, max};
+    }
+
+    /**
+     * Parses the unit mix, and returns each unit repeated as many times as its weight,
+     * so that a uniform draw follows the mix.
+     */
+    private static String[] parseUnits(String mix) {
+        List<String> units = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (parts[0].isBlank() || parts.length > 2 || weight < 0) {
+                throw new IllegalArgumentException("Invalid unit mix: " + mix);
+            }
+            for (int i = 0; i < weight; i++) {
+                units.add(parts[0].trim());
+            }
+        }
+        if (units.isEmpty()) {
+            throw new IllegalArgumentException("Invalid unit mix: " + mix);
+        }
+        return units.toArray(new String[0]);
+    }
+
+    public int getMealCount() {
+        return mealCount;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * Generates a product of the catalog.
+     * @param id the ID of the product, from 0 to getProductCount() - 1
+     * @return a new instance of the product
+     */
+    public Product product(int id) {
+        SplittableRandom random = new SplittableRandom(seed ^ (id + 1) * PRODUCT_SALT);
+        String unit = units[random.nextInt(units.length)];
+        String name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + FOODS[random.nextInt(FOODS.length)] + " " + id;
+        double price = 0.5 + random.nextInt(1500) / 100.0;
+        return new Product(id, name, price, packSize(unit, random), unit);
+    }
+
+    private static double packSize(String unit, SplittableRandom random) {
+        switch (unit) {
+            case "g":
+            case "ml":
+                return 100 + 50 * random.nextInt(19);
+            case "kg":
+            case "l":
+                return 0.5 + 0.5 * random.nextInt(4);
+            default:
+                return 1 + random.nextInt(12);
+        }
+    }
+
+    /**
+     * Generates a meal of the catalog.
+     * Its ingredients are distinct products, and each uses between a twentieth and half of a pack.
+     * @param id the ID of the meal, from 0 to getMealCount() - 1
+     * @param productLookup returns the product with the given ID, such as product or the products of a loaded catalog
+     * @return a new instance of the meal
+     */
+    public Meal meal(int id, IntFunction<Product> productLookup) {
+        SplittableRandom random = new SplittableRandom(seed ^ (id + 1) * MEAL_SALT);
+        int ingredientCount = Math.min(productCount, minIngredients + random.nextInt(maxIngredients - minIngredients + 1));
+        int[] productIds = new int[ingredientCount];
+        List<Ingredient> ingredients = new ArrayList<>(ingredientCount);
+        for (int i = 0; i < ingredientCount; i++) {
+            productIds[i] = distinctProductId(random, productIds, i);
+            Product product = productLookup.apply(productIds[i]);
+            double fraction = (1 + random.nextInt(10)) / 20.0;
+            double quantity = product.getUnit().equals("unit")
+                    ? Math.max(1, Math.round(product.getWeightPerPack() * fraction))
+                    : Math.round(product.getWeightPerPack() * fraction * 100) / 100.0;
+            ingredients.add(new Ingredient(product, quantity));
+        }
+
+        String name = DISHES[random.nextInt(DISHES.length)] + " of " + ingredients.get(0).getProduct().getName();
+        int stepCount = minSteps + random.nextInt(maxSteps - minSteps + 1);
+        StringBuilder recipe = new StringBuilder();
+        for (int step = 1; step <= stepCount; step++) {
+            String productName = ingredients.get(random.nextInt(ingredientCount)).getProduct().getName();
+            if (step > 1) {
+                recipe.append('\n');
+            }
+            recipe.append(step).append(". ").append(String.format(Locale.ROOT, STEPS[random.nextInt(STEPS.length)], productName));
+        }
+        return new Meal(id, name + " #" + id, recipe.toString(), ingredients);
+    }
+
+    private int distinctProductId(SplittableRandom random, int[] chosen, int count) {
+        while (true) {
+            int productId = random.nextInt(productCount);
+            boolean taken = false;
+            for (int i = 0; i < count && !taken; i++) {
+                taken = chosen[i] == productId;
+            }
+            if (!taken) {
+                return productId;
+            }
+        }
+    }
+
+    /**
+     * Generates every product, in order of ID.
+     * @param consumer receives each product
+     */
+    public void forEachProduct(Consumer<Product> consumer) {
+        for (int id = 0; id < productCount; id++) {
+            consumer.accept(product(id));
+        }
+    }
+
+    /**
+     * Generates every meal, in order of ID.
+     * @param productLookup returns the product with the given ID
+     * @param consumer receives each meal
+     */
+    public void forEachMeal(IntFunction<Product> productLookup, Consumer<Meal> consumer) {
+        for (int id = 0; id < mealCount; id++) {
+            consumer.accept(meal(id, productLookup));
+        }
+    }
+
+    /**
+     * Writes the catalog to products.json and meals.json in a directory,
+     * in the layout where ingredients refer to their product by ID.
+     * The files are written one element at a time, then renamed over the existing files.
+     * @param directory the directory, created if needed
+     * @throws IOException if a file cannot be written
+     */
+    public void write(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        writeArray(new File(directory, "products.json"), json -> forEachProduct(product -> {
+            try {
+                json.beginObject();
+                json.name("id").value(product.getId());
+                json.name("name").value(product.getName());
+                json.name("pricePerPack").value(product.getPricePerPack());
+                json.name("weightPerPack").value(product.getWeightPerPack());
+                json.name("unit").value(product.getUnit());
+                json.endObject();
+            } catch (IOException e) {
+                throw new GenerationException(e);
+            }
+        }));
+        writeArray(new File(directory, "meals.json"), json -> forEachMeal(this::product, meal -> {
+            try {
+                json.beginObject();
+                json.name("id").value(meal.getId());
+                json.name("name").value(meal.getName());
+                json.name("recipe").value(meal.getRecipe());
+                json.name("ingredients").beginArray();
+                for (Ingredient ingredient : meal.getIngredients()) {
+                    json.beginObject();
+                    json.name("productId").value(ingredient.getProduct().getId());
+                    json.name("quantity").value(ingredient.getQuantity());
+                    json.endObject();
+                }
+                json.endArray();
+                json.endObject();
+            } catch (IOException e) {
+                throw new GenerationException(e);
+            }
+        }));
+    }
+
+    private static void writeArray(File target, Consumer<JsonWriter> elementsWriter) throws IOException {
+        File temporary = new File(target.getPath() + ".tmp");
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8))) {
+            json.beginArray();
+            elementsWriter.accept(json);
+            json.endArray();
+        } catch (GenerationException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carries an IOException out of the element consumers.
+     */
+    private static class GenerationException extends RuntimeException {
+        GenerationException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
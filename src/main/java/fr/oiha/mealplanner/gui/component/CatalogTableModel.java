@@ -0,0 +1,242 @@
+package fr.oiha.mealplanner.gui.component;
+
+import fr.oiha.mealplanner.service.CatalogChangeEvent;
+import fr.oiha.mealplanner.service.CatalogChangeListener;
+import fr.oiha.mealplanner.service.CatalogVersion;
+import fr.oiha.mealplanner.service.MealPlannerService;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Table model showing the products or meals of a catalog version, one row per ID.
+ * The model only holds the version and the sorted IDs of its rows:
+ * the cells are read from the version when the table paints them, so only the visible rows are ever read.
+ * A refresh takes the current version of the service and collects its IDs on a background worker,
+ * then swaps them in with a single data change event, whatever the number of rows.
+ * The version is immutable, so the rows stay consistent until the next change.
+ * Once attached, the model follows the change events of the service,
+ * moving to each new version by inserting, updating or deleting only the rows of the changed products or meals.
+ */
+public abstract class CatalogTableModel extends AbstractTableModel implements CatalogChangeListener {
+    private final CatalogChangeEvent.Entity rowEntity;
+    private final String[] columnNames;
+    private CatalogVersion catalog;
+    private int[] ids = new int[0];
+    private RefreshWorker refreshWorker;
+    private JProgressBar progressBar;
+    // Highest version announced by a change event while a refresh was in progress
+    private long missedVersion = -1;
+
+    /**
+     * @param rowEntity the kind of entity shown in the rows
+     * @param columnNames the names of the columns
+     */
+    protected CatalogTableModel(CatalogChangeEvent.Entity rowEntity, String... columnNames) {
+        this.rowEntity = rowEntity;
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * Returns the IDs of the rows of a version, in ascending order.
+     * Called on the worker thread.
+     * @param catalog the catalog version
+     * @return the sorted IDs of the rows
+     */
+    protected abstract int[] rowIds(CatalogVersion catalog);
+
+    /**
+     * Starts following the change events of the service.
+     * Called when the table is shown.
+     */
+    public void attach() {
+        MealPlannerService.getInstance().addCatalogChangeListener(this);
+    }
+
+    /**
+     * Stops following the change events of the service, and cancels a refresh in progress.
+     * Called when the table is hidden, so the service does not keep the model.
+     */
+    public void detach() {
+        MealPlannerService.getInstance().removeCatalogChangeListener(this);
+        if (refreshWorker != null) {
+            refreshWorker.cancel(true);
+            refreshWorker = null;
+            progressBar.setVisible(false);
+        }
+    }
+
+    /**
+     * Shows the current version of the catalog.
+     * The IDs are collected in the background, while the progress bar is shown,
+     * and the table keeps showing the previous version until they are ready.
+     * A refresh still in progress is cancelled first.
+     * Must be called on the event dispatch thread.
+     * @param progressBar the progress bar shown during the refresh
+     */
+    public void refresh(JProgressBar progressBar) {
+        if (refreshWorker != null) {
+            refreshWorker.cancel(true);
+        }
+        this.progressBar = progressBar;
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(true);
+        refreshWorker = new RefreshWorker();
+        refreshWorker.execute();
+    }
+
+    /**
+     * Collects the IDs of the rows of the current version, then shows them unless it was cancelled.
+     */
+    private class RefreshWorker extends SwingWorker<int[], Void> {
+        private CatalogVersion version;
+
+        @Override
+        protected int[] doInBackground() {
+            version = MealPlannerService.getInstance().getCatalog();
+            return rowIds(version);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            refreshWorker = null;
+            progressBar.setVisible(false);
+            try {
+                setRows(version, get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                return;
+            }
+            // A change published after the version was taken has been skipped
+            if (missedVersion > version.getNumber()) {
+                refresh(progressBar);
+            }
+            missedVersion = -1;
+        }
+    }
+
+    /**
+     * Receives a change event on the thread of the change, and applies it on the event dispatch thread.
+     * The events are queued in the order of the versions, and applied in that order.
+     */
+    @Override
+    public void catalogChanged(CatalogChangeEvent event) {
+        SwingUtilities.invokeLater(() -> applyChange(event));
+    }
+
+    /**
+     * Moves to the version of a change event.
+     * The event is skipped if the model already shows that version or a later one,
+     * and the whole version is refreshed if an event was missed.
+     * @param event the change
+     */
+    private void applyChange(CatalogChangeEvent event) {
+        long number = event.getVersion().getNumber();
+        if (refreshWorker != null) {
+            missedVersion = Math.max(missedVersion, number);
+            return;
+        }
+        if (catalog == null || number <= catalog.getNumber()) {
+            return;
+        }
+        if (number != catalog.getNumber() + 1) {
+            refresh(progressBar);
+            return;
+        }
+
+        catalog = event.getVersion();
+        rowsReplaced();
+        for (CatalogChangeEvent.Change change : event.getChanges()) {
+            if (change.getEntity() != rowEntity) {
+                continue;
+            }
+            // A listener of the previous change may have read rows whose index has moved since
+            rowsReplaced();
+            int row = Arrays.binarySearch(ids, change.getId());
+            switch (change.getType()) {
+                case ADDED -> {
+                    if (row < 0) {
+                        row = -row - 1;
+                        int[] inserted = new int[ids.length + 1];
+                        System.arraycopy(ids, 0, inserted, 0, row);
+                        inserted[row] = change.getId();
+                        System.arraycopy(ids, row, inserted, row + 1, ids.length - row);
+                        ids = inserted;
+                        fireTableRowsInserted(row, row);
+                    } else {
+                        fireTableRowsUpdated(row, row);
+                    }
+                }
+                case UPDATED -> {
+                    if (row >= 0) {
+                        fireTableRowsUpdated(row, row);
+                    }
+                }
+                case REMOVED -> {
+                    if (row >= 0) {
+                        int[] remaining = new int[ids.length - 1];
+                        System.arraycopy(ids, 0, remaining, 0, row);
+                        System.arraycopy(ids, row + 1, remaining, row, ids.length - row - 1);
+                        ids = remaining;
+                        fireTableRowsDeleted(row, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows the given rows of a version, with a single data change event.
+     * @param catalog the catalog version
+     * @param ids the sorted IDs of the rows
+     */
+    protected void setRows(CatalogVersion catalog, int[] ids) {
+        this.catalog = catalog;
+        this.ids = ids;
+        rowsReplaced();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Called when the rows or their version are replaced, to clear what subclasses cache about them.
+     */
+    protected void rowsReplaced() {
+    }
+
+    /**
+     * Returns the catalog version shown.
+     * @return the version, or null before the first refresh
+     */
+    public CatalogVersion getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns the ID of the product or meal shown in a row.
+     * @param row the index of the row in the model
+     * @return the ID
+     */
+    public int getIdAt(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int getRowCount() {
+        return ids.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+}
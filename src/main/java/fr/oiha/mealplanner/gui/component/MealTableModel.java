@@ -0,0 +1,53 @@
+package fr.oiha.mealplanner.gui.component;
+
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.service.CatalogChangeEvent;
+import fr.oiha.mealplanner.service.CatalogVersion;
+
+/**
+ * Table model of the meals of a catalog version, in ID order:
+ * their name, their total price, read from the cost table of the version, and their number of ingredients.
+ */
+public class MealTableModel extends CatalogTableModel {
+    // The cells of a row are painted one after the other, so the meal of the last row read is kept
+    private int cachedRow = -1;
+    private Meal cachedMeal;
+
+    public MealTableModel() {
+        super(CatalogChangeEvent.Entity.MEAL, "Name of the Meal", "Total Price", "Nbr Ingredients");
+    }
+
+    @Override
+    protected int[] rowIds(CatalogVersion catalog) {
+        return catalog.getMealIds();
+    }
+
+    @Override
+    protected void rowsReplaced() {
+        cachedRow = -1;
+        cachedMeal = null;
+    }
+
+    /**
+     * Returns the meal shown in a row.
+     * @param row the index of the row in the model
+     * @return the meal
+     */
+    public Meal getMealAt(int row) {
+        if (row != cachedRow) {
+            cachedMeal = getCatalog().getMealById(getIdAt(row));
+            cachedRow = row;
+        }
+        return cachedMeal;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Meal meal = getMealAt(row);
+        return switch (column) {
+            case 0 -> meal.getName();
+            case 1 -> String.format("%.2f €", getCatalog().getMealCost(meal));
+            default -> meal.getIngredients().size();
+        };
+    }
+}
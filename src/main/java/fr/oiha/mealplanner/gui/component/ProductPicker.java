@@ -0,0 +1,139 @@
+package fr.oiha.mealplanner.gui.component;
+
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.service.MealPlannerService;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Type-ahead product picker: a search field, and the list of the products whose name matches what is typed.
+ * Each change of the text asks the name index of the service for the first MAX_MATCHES matches,
+ * so the picker never lists the whole catalog, and opening it does not depend on the number of products.
+ * The searches run on a background worker, the first one building the index,
+ * and a search still running when the text changes again is cancelled.
+ * The up and down keys move the selection of the list without leaving the search field.
+ */
+public class ProductPicker extends JPanel {
+    /**
+     * Maximum number of products listed.
+     */
+    public static final int MAX_MATCHES = 50;
+
+    // Product used by the list to compute its width, instead of measuring every match
+    private static final Product PROTOTYPE = new Product(-1, "XXXXXXXXXXXXXXXXXXXXXXXXX", 0, 0, "");
+
+    private final MealPlannerService service;
+    private final JTextField searchField;
+    private final DefaultListModel<Product> matches = new DefaultListModel<>();
+    private final JList<Product> matchList;
+    private SwingWorker<List<Product>, Void> searchWorker;
+
+    public ProductPicker(MealPlannerService service) {
+        super(new BorderLayout(0, 5));
+        this.service = service;
+
+        searchField = new JTextField(20);
+        searchField.setToolTipText("Type part of the product name");
+        matchList = new JList<>(matches);
+        matchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchList.setVisibleRowCount(6);
+        matchList.setPrototypeCellValue(PROTOTYPE);
+
+        add(searchField, BorderLayout.NORTH);
+        add(new JScrollPane(matchList), BorderLayout.CENTER);
+
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+        bindSelectionKey("UP", "selectPreviousMatch", -1);
+        bindSelectionKey("DOWN", "selectNextMatch", 1);
+
+        search();
+    }
+
+    private void bindSelectionKey(String key, String name, int offset) {
+        searchField.getInputMap().put(KeyStroke.getKeyStroke(key), name);
+        searchField.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int index = matchList.getSelectedIndex() + offset;
+                if (index >= 0 && index < matches.size()) {
+                    matchList.setSelectedIndex(index);
+                    matchList.ensureIndexIsVisible(index);
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches the products matching the text of the search field, in the background,
+     * then lists them and selects the first one.
+     */
+    private void search() {
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+        }
+        String query = searchField.getText();
+        searchWorker = new SwingWorker<>() {
+            @Override
+            protected List<Product> doInBackground() {
+                return service.searchProducts(query, MAX_MATCHES);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                searchWorker = null;
+                try {
+                    showMatches(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private void showMatches(List<Product> products) {
+        matches.clear();
+        matches.addAll(products);
+        if (!products.isEmpty()) {
+            matchList.setSelectedIndex(0);
+            matchList.ensureIndexIsVisible(0);
+        }
+    }
+
+    /**
+     * Returns the product selected in the list of matches.
+     * @return the selected product, or null if no product matches
+     */
+    public Product getSelectedProduct() {
+        return matchList.getSelectedValue();
+    }
+
+    @Override
+    public boolean requestFocusInWindow() {
+        return searchField.requestFocusInWindow();
+    }
+}
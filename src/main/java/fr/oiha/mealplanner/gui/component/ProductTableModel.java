@@ -0,0 +1,54 @@
+package fr.oiha.mealplanner.gui.component;
+
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.service.CatalogChangeEvent;
+import fr.oiha.mealplanner.service.CatalogVersion;
+
+/**
+ * Table model of the products of a catalog version, in ID order:
+ * their name, their price per pack and their unit.
+ */
+public class ProductTableModel extends CatalogTableModel {
+    // The cells of a row are painted one after the other, so the product of the last row read is kept,
+    // which in MAPPED catalog mode also decodes each product once per row
+    private int cachedRow = -1;
+    private Product cachedProduct;
+
+    public ProductTableModel() {
+        super(CatalogChangeEvent.Entity.PRODUCT, "Product Name", "Price", "Unit");
+    }
+
+    @Override
+    protected int[] rowIds(CatalogVersion catalog) {
+        return catalog.getProductIds();
+    }
+
+    @Override
+    protected void rowsReplaced() {
+        cachedRow = -1;
+        cachedProduct = null;
+    }
+
+    /**
+     * Returns the product shown in a row.
+     * @param row the index of the row in the model
+     * @return the product
+     */
+    public Product getProductAt(int row) {
+        if (row != cachedRow) {
+            cachedProduct = getCatalog().getProductById(getIdAt(row));
+            cachedRow = row;
+        }
+        return cachedProduct;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Product product = getProductAt(row);
+        return switch (column) {
+            case 0 -> product.getName();
+            case 1 -> product.getPricePerPack();
+            default -> product.getUnit();
+        };
+    }
+}
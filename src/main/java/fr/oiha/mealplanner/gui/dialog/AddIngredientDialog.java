@@ -3,6 +3,7 @@ package fr.oiha.mealplanner.gui.dialog;
 import fr.oiha.mealplanner.model.Product;
 import fr.oiha.mealplanner.service.MealPlannerService;
 import fr.oiha.mealplanner.gui.component.CustomButton;
+import fr.oiha.mealplanner.gui.component.ProductPicker;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -10,11 +11,10 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.NumberFormat;
-import java.util.Set;
 
 /**
  * AddIngredientDialog is a JDialog that allows the user to add an ingredient to a meal.
- * It contains a JComboBox for selecting a product,
+ * It contains a ProductPicker for searching and selecting a product by name,
  * a JFormattedTextField for entering the quantity,
  * and buttons to add or cancel the action.
  * It validates the input and updates the table model with the new ingredient.
@@ -23,7 +23,7 @@ public class AddIngredientDialog extends JDialog {
 
     public AddIngredientDialog(JFrame parent, DefaultTableModel tableModel) {
         super(parent, "Add Ingredient", true);
-        setSize(350, 200);
+        setSize(350, 320);
         setLocationRelativeTo(parent);
         setLayout(new BorderLayout(10, 10));
 
@@ -32,8 +32,7 @@ public class AddIngredientDialog extends JDialog {
         gbc.insets = new Insets(5, 5, 5, 5);
         gbc.anchor = GridBagConstraints.WEST;
 
-        Set<Product> products = MealPlannerService.getInstance().getProducts();
-        if (products.isEmpty()) {
+        if (MealPlannerService.getInstance().getCatalog().getProductCount() == 0) {
             JOptionPane.showMessageDialog(parent,
                     "No products available. Please add products first.",
                     "No Products",
@@ -42,19 +41,21 @@ public class AddIngredientDialog extends JDialog {
             return;
         }
 
-        JComboBox<Product> productComboBox = new JComboBox<>();
-        for (Product product : products) {
-            productComboBox.addItem(product);
-        }
+        ProductPicker productPicker = new ProductPicker(MealPlannerService.getInstance());
 
         gbc.gridx = 0;
         gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.NORTHWEST;
         JLabel productLabel = new JLabel("Product:");
         panel.add(productLabel, gbc);
 
         gbc.gridx = 1;
-        gbc.fill = GridBagConstraints.HORIZONTAL;
-        panel.add(productComboBox, gbc);
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.weightx = 1;
+        gbc.weighty = 1;
+        panel.add(productPicker, gbc);
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.weighty = 0;
 
         JFormattedTextField quantityField = new JFormattedTextField(NumberFormat.getNumberInstance());
         quantityField.setValue(1.0);
@@ -92,7 +93,7 @@ public class AddIngredientDialog extends JDialog {
                         return;
                     }
 
-                    Product selectedProduct = (Product) productComboBox.getSelectedItem();
+                    Product selectedProduct = productPicker.getSelectedProduct();
                     if (selectedProduct != null) {
                         tableModel.addRow(new Object[]{
                                 selectedProduct,
@@ -1,10 +1,10 @@
 package fr.oiha.mealplanner.gui.frame;
 
 import fr.oiha.mealplanner.gui.component.CustomButton;
+import fr.oiha.mealplanner.gui.component.ProductPicker;
 import fr.oiha.mealplanner.gui.panel.MealPanel;
 import fr.oiha.mealplanner.model.Ingredient;
 import fr.oiha.mealplanner.model.Product;
-import fr.oiha.mealplanner.service.DataStorageService;
 import fr.oiha.mealplanner.service.MealPlannerService;
 
 import javax.swing.*;
@@ -15,7 +15,6 @@ import java.awt.event.*;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Frame for adding a new meal
@@ -30,11 +29,9 @@ public class AddMealFrame extends JFrame {
     private CustomButton removeIngredientButton;
     private CustomButton saveButton;
     private CustomButton cancelButton;
-    private MealPanel parentFrame;
 
     public AddMealFrame(MealPanel parent) {
         super("Add Meal");
-        this.parentFrame = parent;
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setSize(500, 500);
         setLocationRelativeTo(parent);
@@ -172,9 +169,6 @@ public class AddMealFrame extends JFrame {
                 if (validateInput()) {
                     saveMeal();
                     dispose();
-                    if (parentFrame != null) {
-                        parentFrame.loadMeals();
-                    }
                 }
             }
         });
@@ -196,7 +190,7 @@ public class AddMealFrame extends JFrame {
      */
     private void showAddIngredientDialog() {
         JDialog dialog = new JDialog(this, "Add Ingredient", true);
-        dialog.setSize(350, 200);
+        dialog.setSize(350, 320);
         dialog.setLocationRelativeTo(this);
         dialog.setLayout(new BorderLayout(10, 10));
 
@@ -205,9 +199,8 @@ public class AddMealFrame extends JFrame {
         gbc.insets = new Insets(5, 5, 5, 5);
         gbc.anchor = GridBagConstraints.WEST;
 
-        // Product dropdown
-        Set<Product> products = MealPlannerService.getInstance().getProducts();
-        if (products.isEmpty()) {
+        // Product picker, searching the products by name as the user types
+        if (MealPlannerService.getInstance().getCatalog().getProductCount() == 0) {
             JOptionPane.showMessageDialog(this,
                     "No products available. Please add products first.",
                     "No Products",
@@ -215,19 +208,21 @@ public class AddMealFrame extends JFrame {
             return;
         }
 
-        JComboBox<Product> productComboBox = new JComboBox<>();
-        for (Product product : products) {
-            productComboBox.addItem(product);
-        }
+        ProductPicker productPicker = new ProductPicker(MealPlannerService.getInstance());
 
         gbc.gridx = 0;
         gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.NORTHWEST;
         JLabel productLabel = new JLabel("Product:");
         panel.add(productLabel, gbc);
 
         gbc.gridx = 1;
-        gbc.fill = GridBagConstraints.HORIZONTAL;
-        panel.add(productComboBox, gbc);
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.weightx = 1;
+        gbc.weighty = 1;
+        panel.add(productPicker, gbc);
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.weighty = 0;
 
         JFormattedTextField quantityField = new JFormattedTextField(NumberFormat.getNumberInstance());
         quantityField.setValue(1.0);
@@ -267,7 +262,7 @@ public class AddMealFrame extends JFrame {
                         return;
                     }
 
-                    Product selectedProduct = (Product)productComboBox.getSelectedItem();
+                    Product selectedProduct = productPicker.getSelectedProduct();
                     if (selectedProduct != null) {
                         tableModel.addRow(new Object[]{
                                 selectedProduct,
@@ -344,7 +339,6 @@ public class AddMealFrame extends JFrame {
         }
 
         MealPlannerService.getInstance().addMeal(name, ingredients, recipe);
-        DataStorageService.saveMeals(MealPlannerService.getInstance().getMeals());
         JOptionPane.showMessageDialog(this,
                 "Meal added successfully!",
                 "Success",
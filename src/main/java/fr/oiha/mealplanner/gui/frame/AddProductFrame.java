@@ -2,7 +2,6 @@ package fr.oiha.mealplanner.gui.frame;
 
 import fr.oiha.mealplanner.gui.component.CustomButton;
 import fr.oiha.mealplanner.gui.panel.ProductPanel;
-import fr.oiha.mealplanner.service.DataStorageService;
 import fr.oiha.mealplanner.service.MealPlannerService;
 
 import javax.swing.*;
@@ -15,14 +14,12 @@ public class AddProductFrame extends JFrame {
     private JComboBox<String> unitComboBox;
     private JFormattedTextField weightPerPackField;
     private JFormattedTextField pricePerPackField;
-    private ProductPanel parentFrame;
 
     private CustomButton addButton;
     private CustomButton cancelButton;
 
     public AddProductFrame(ProductPanel parent) {
         super("Add New Product");
-        this.parentFrame = parent;
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setSize(400, 250);
         setLocationRelativeTo(parent);
@@ -119,8 +116,6 @@ public class AddProductFrame extends JFrame {
             public void actionPerformed(ActionEvent e) {
                 if (validateInput()) {
                     MealPlannerService.getInstance().addProduct(getProductName(), getPricePerPack(), getWeightPerPack(), getUnit());
-                    DataStorageService.saveProducts(MealPlannerService.getInstance().getProducts());
-                    parentFrame.loadProducts();
                     dispose();
                 }
             }
@@ -7,7 +7,6 @@ import fr.oiha.mealplanner.gui.panel.MealPanel;
 import fr.oiha.mealplanner.model.Ingredient;
 import fr.oiha.mealplanner.model.Meal;
 import fr.oiha.mealplanner.model.Product;
-import fr.oiha.mealplanner.service.DataStorageService;
 import fr.oiha.mealplanner.service.MealPlannerService;
 
 import javax.swing.*;
@@ -34,12 +33,10 @@ public class ModifyMealFrame extends JFrame {
     private CustomButton removeIngredientButton;
     private CustomButton saveButton;
     private CustomButton cancelButton;
-    private MealPanel parentFrame;
     private int id;
 
     public ModifyMealFrame(MealPanel parent, int id) {
         super("Modify Meal");
-        this.parentFrame = parent;
         this.id = id;
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setSize(500, 500);
@@ -91,10 +88,7 @@ public class ModifyMealFrame extends JFrame {
      * If the meal is not found, it shows an error message and closes the frame.
      */
     private void loadMealData() {
-        Meal meal = MealPlannerService.getInstance().getMeals().stream()
-                .filter(m -> m.getId() == id)
-                .findFirst()
-                .orElse(null);
+        Meal meal = MealPlannerService.getInstance().getMealById(id);
 
         if (meal != null) {
             nameField.setText(meal.getName());
@@ -204,9 +198,6 @@ public class ModifyMealFrame extends JFrame {
                 if (validateInput()) {
                     saveMeal();
                     dispose();
-                    if (parentFrame != null) {
-                        parentFrame.loadMeals();
-                    }
                 }
             }
         });
@@ -254,7 +245,6 @@ public class ModifyMealFrame extends JFrame {
      * Saves the modified meal to the MealPlannerService.
      * This method retrieves the meal name, recipe, and ingredients from the form fields,
      * and updates the meal in the MealPlannerService.
-     * It also saves the updated meals to the data storage.
      * If the meal is not found, it shows an error message.
      * @throws MealNotFoundException if the meal is not found in the MealPlannerService.
      * This exception is caught and handled in the calling method.
@@ -272,7 +262,6 @@ public class ModifyMealFrame extends JFrame {
 
         try {
             MealPlannerService.getInstance().modifyMeal(id, name, ingredients, recipe);
-            DataStorageService.saveMeals(MealPlannerService.getInstance().getMeals());
             JOptionPane.showMessageDialog(this,
                     "Meal modified successfully!",
                     "Success",
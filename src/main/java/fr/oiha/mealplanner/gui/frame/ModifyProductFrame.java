@@ -21,7 +21,6 @@ public class ModifyProductFrame extends JFrame {
     private JComboBox<String> unitComboBox;
     private JFormattedTextField weightPerPackField;
     private JFormattedTextField pricePerPackField;
-    private ProductPanel parentFrame;
     private int productId; 
 
     private CustomButton saveButton;
@@ -29,7 +28,6 @@ public class ModifyProductFrame extends JFrame {
 
     public ModifyProductFrame(ProductPanel parent, int productId) {
         super("Modify Product");
-        this.parentFrame = parent;
         this.productId = productId; 
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setSize(400, 250);
@@ -71,10 +69,7 @@ public class ModifyProductFrame extends JFrame {
      * It retrieves the product from the MealPlannerService using the productId.
      */
     private void loadProductData() {
-        Product product = MealPlannerService.getInstance().getProducts().stream()
-                .filter(p -> p.getId() == productId)
-                .findFirst()
-                .orElse(null);
+        Product product = MealPlannerService.getInstance().getProductById(productId);
 
         if (product != null) {
             nameField.setText(product.getName());
@@ -148,7 +143,7 @@ public class ModifyProductFrame extends JFrame {
 
     // Action to perform when the save button is clicked
     // It validates the input and modifies the product in the MealPlannerService
-    // If successful, it reloads the products and closes the frame
+    // If successful, it closes the frame, the product table being updated by the change event of the service
     private void setupEventHandlers() {
         saveButton.addActionListener(new ActionListener() {
             @Override
@@ -156,7 +151,6 @@ public class ModifyProductFrame extends JFrame {
                 if (validateInput()) {
                     try {
                         MealPlannerService.getInstance().modifyProduct(productId, getProductName(), getPricePerPack(), getWeightPerPack(), getUnit());
-                        parentFrame.loadProducts();
                         dispose();
                     } catch (ProductNotFoundException ex) {
                         JOptionPane.showMessageDialog(ModifyProductFrame.this,
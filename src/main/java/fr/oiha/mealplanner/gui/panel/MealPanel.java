@@ -1,25 +1,23 @@
 package fr.oiha.mealplanner.gui.panel;
 
 import fr.oiha.mealplanner.gui.component.CustomButton;
+import fr.oiha.mealplanner.gui.component.MealTableModel;
 import fr.oiha.mealplanner.gui.frame.AddMealFrame;
 import fr.oiha.mealplanner.gui.frame.ModifyMealFrame;
 import fr.oiha.mealplanner.service.MealPlannerService;
-import fr.oiha.mealplanner.model.Ingredient;
-import fr.oiha.mealplanner.model.Meal;
 
 import javax.swing.*;
 import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * MealPanel is a JPanel that displays a list of meals in a table format.
  * It allows users to add, modify, and delete meals.
  * It uses a JToolBar for action buttons and a JTable to display meal information.
- * It also handles the loading of meals from the MealPlannerService.
+ * It also handles the loading of meals from the MealPlannerService and follows the changes of the catalog,
+ * the table showing a catalog version through a MealTableModel, which only reads the visible meals.
  */
 public class MealPanel extends JPanel {
     private JToolBar toolBar;
@@ -28,10 +26,10 @@ public class MealPanel extends JPanel {
     private JButton deleteButton;
     private JScrollPane scrollPane;
     private JTable mealTable;
-    private Map<Integer, Integer> rowToMealId;
+    private MealTableModel mealTableModel;
+    private JProgressBar progressBar;
 
     public MealPanel() {
-        rowToMealId = new HashMap<>();
         initComponents();
         setupEventHandlers();
         setName("MealPanel");
@@ -67,19 +65,18 @@ public class MealPanel extends JPanel {
         mealTable.setShowVerticalLines(true);
         mealTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         mealTable.setRowSelectionAllowed(true);
-        mealTable.setModel(new DefaultTableModel(
-                new Object[][] {
-                },
-                new String[] {
-                        "Name of the Meal", "Total Price", "Nbr Ingredients"
-                }
-        ));
+        mealTableModel = new MealTableModel();
+        mealTable.setModel(mealTableModel);
 
         JTableHeader tableHeader = mealTable.getTableHeader();
         tableHeader.setReorderingAllowed(false);
 
         scrollPane.setViewportView(mealTable);
         add(scrollPane, BorderLayout.CENTER);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        add(progressBar, BorderLayout.SOUTH);
     }
 
     private void setupEventHandlers() {
@@ -96,7 +93,6 @@ public class MealPanel extends JPanel {
         // This method is called when the modify button is clicked
         // It checks if a meal is selected and opens a dialog to modify it
         // If no meal is selected, it shows a message dialog
-        // If the meal ID is not found, it shows an error message
         modifyButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -106,11 +102,7 @@ public class MealPanel extends JPanel {
                     return;
                 }
 
-                Integer mealId = rowToMealId.get(selectedRow);
-                if (mealId == null) {
-                    JOptionPane.showMessageDialog(MealPanel.this, "Error: Could not find meal ID");
-                    return;
-                }
+                int mealId = mealTableModel.getIdAt(selectedRow);
                 ModifyMealFrame dialog = new ModifyMealFrame(MealPanel.this, mealId);
                 dialog.setVisible(true);
             }
@@ -119,7 +111,6 @@ public class MealPanel extends JPanel {
         // This method is called when the delete button is clicked
         // It checks if a meal is selected and deletes it
         // If no meal is selected, it shows a message dialog
-        // If the meal ID is not found, it shows an error message
         deleteButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -129,45 +120,35 @@ public class MealPanel extends JPanel {
                     return;
                 }
 
-                Integer mealId = rowToMealId.get(selectedRow);
-                if (mealId == null) {
-                    JOptionPane.showMessageDialog(MealPanel.this, "Error: Could not find meal ID");
-                    return;
-                }
+                int mealId = mealTableModel.getIdAt(selectedRow);
                 MealPlannerService.getInstance().removeMeal(mealId);
-                loadMeals();
             }
         });
     }
 
     /**
      * Loads the meals from the MealPlannerService and populates the meal table.
-     * It clears the existing rows in the table and adds new rows for each meal.
-     * It also calculates the total price of each meal based on its ingredients.
+     * The table model is given the current catalog version and the IDs of its meals,
+     * collected in the background while a progress bar is shown, and the cells are read on demand.
+     * The total price of each meal comes from the cost table of the catalog version.
      */
     public void loadMeals() {
-        ((DefaultTableModel) mealTable.getModel()).setRowCount(0);
-        rowToMealId.clear();
-        int rowIndex = 0;
-
-        for (Meal meal : MealPlannerService.getInstance().getMeals()) {
-
-            double totalPrice = 0.0;
-            for (Ingredient ingredient : meal.getIngredients()) {
-
-                double proportion = ingredient.getQuantity() / ingredient.getProduct().getWeightPerPack();
-                totalPrice += proportion * ingredient.getProduct().getPricePerPack();
-            }
-            
-            ((DefaultTableModel) mealTable.getModel()).addRow(new Object[]{
-                    meal.getName(),
-                    String.format("%.2f €", totalPrice),
-                    meal.getIngredients().size()
-            });
+        mealTableModel.refresh(progressBar);
+    }
 
+    /**
+     * Starts following the changes of the catalog when the panel is shown,
+     * so that the rows of the added, modified and deleted meals are updated without reloading the table.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        mealTableModel.attach();
+    }
 
-            rowToMealId.put(rowIndex, meal.getId());
-            rowIndex++;
-        }
+    @Override
+    public void removeNotify() {
+        mealTableModel.detach();
+        super.removeNotify();
     }
 }
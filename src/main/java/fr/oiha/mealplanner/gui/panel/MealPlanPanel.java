@@ -2,6 +2,7 @@ package fr.oiha.mealplanner.gui.panel;
 
 import fr.oiha.mealplanner.model.Meal;
 import fr.oiha.mealplanner.model.MealPlan;
+import fr.oiha.mealplanner.service.GenerationMode;
 import fr.oiha.mealplanner.service.MealPlannerService;
 import fr.oiha.mealplanner.gui.component.CustomButton;
 
@@ -11,12 +12,16 @@ import javax.swing.table.*;
 import java.awt.*;
 import java.io.File;
 import java.text.DecimalFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * MealPlanPanel is a JPanel that allows users to generate and export meal plans.
  * It provides options to specify the number of meals and budget,
  * and displays the generated meal plan in a table format.
  * It also allows users to export the meal plan to a Markdown file.
+ * The plan is generated and exported on background workers, a progress bar showing the work in progress,
+ * so the window stays responsive on large catalogs.
  */
 public class MealPlanPanel extends JPanel {
     private JPanel optionsPanel;
@@ -24,6 +29,8 @@ public class MealPlanPanel extends JPanel {
     private JSpinner mealCountSpinner;
     private JLabel budgetLabel;
     private JTextField budgetField;
+    private JLabel modeLabel;
+    private JComboBox<GenerationMode> modeComboBox;
 
     private JButton generatePlanButton;
     private JButton exportButton;
@@ -33,8 +40,10 @@ public class MealPlanPanel extends JPanel {
     private JTable mealPlanTable;
 
     private JLabel totalCostLabel;
+    private JProgressBar progressBar;
 
     private MealPlan currentMealPlan;
+    private SwingWorker<PlanRows, Void> generateWorker;
     private final MealPlannerService service;
     private final DecimalFormat priceFormat = new DecimalFormat("0.00 €");
 
@@ -61,6 +70,9 @@ public class MealPlanPanel extends JPanel {
         budgetLabel = new JLabel("Maximum budget (€):");
         budgetField = new JTextField("100", 8);
 
+        modeLabel = new JLabel("Mode:");
+        modeComboBox = new JComboBox<>(GenerationMode.values());
+
         generatePlanButton = new CustomButton("Generate Meal Plan");
         generatePlanButton.setPreferredSize(new Dimension(180, 40));
         exportButton = new CustomButton("Export List and Recipes");
@@ -70,6 +82,8 @@ public class MealPlanPanel extends JPanel {
         optionsPanel.add(mealCountSpinner);
         optionsPanel.add(budgetLabel);
         optionsPanel.add(budgetField);
+        optionsPanel.add(modeLabel);
+        optionsPanel.add(modeComboBox);
         optionsPanel.add(generatePlanButton);
         optionsPanel.add(exportButton);
 
@@ -90,7 +104,13 @@ public class MealPlanPanel extends JPanel {
         planPanel.add(scrollPane, BorderLayout.CENTER);
 
         totalCostLabel = new JLabel("Total cost: 0.00 €", JLabel.RIGHT);
-        planPanel.add(totalCostLabel, BorderLayout.SOUTH);
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+        JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
+        statusPanel.add(progressBar, BorderLayout.CENTER);
+        statusPanel.add(totalCostLabel, BorderLayout.EAST);
+        planPanel.add(statusPanel, BorderLayout.SOUTH);
 
         add(planPanel, BorderLayout.CENTER);
     }
@@ -101,32 +121,93 @@ public class MealPlanPanel extends JPanel {
     }
 
     /**
-     * Generates a meal plan based on the specified budget and number of meals.
-     * Displays the generated meal plan in a table format.
+     * The rows of a generated meal plan, built on the worker thread.
+     */
+    private static class PlanRows {
+        private final MealPlan plan;
+        private final Object[][] rows;
+        private final double totalCost;
+
+        PlanRows(MealPlan plan, Object[][] rows, double totalCost) {
+            this.plan = plan;
+            this.rows = rows;
+            this.totalCost = totalCost;
+        }
+    }
+
+    /**
+     * Generates a meal plan based on the specified budget, number of meals and mode.
+     * The plan is generated and costed on a background worker, then displayed in a table format.
+     * A generation still in progress is cancelled first, and its plan is never displayed.
      * If the input is invalid or no meals are available,
      * shows an error message.
      */
     private void generateMealPlan() {
+        int mealCount = (int) mealCountSpinner.getValue();
+        double budget;
         try {
-            int mealCount = (int) mealCountSpinner.getValue();
-            double budget = Double.parseDouble(budgetField.getText().replace(',', '.'));
-            if (mealCount <= 0 || budget <= 0) {
-                JOptionPane.showMessageDialog(this, "Invalid input.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            currentMealPlan = service.generateMealPlan(budget, mealCount);
-            if (currentMealPlan == null || currentMealPlan.getMeals().isEmpty()) {
-                JOptionPane.showMessageDialog(this, "No meals available.", "Error", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            updateMealPlanTable();
+            budget = Double.parseDouble(budgetField.getText().replace(',', '.'));
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Invalid budget.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (mealCount <= 0 || budget <= 0) {
+            JOptionPane.showMessageDialog(this, "Invalid input.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        GenerationMode mode = (GenerationMode) modeComboBox.getSelectedItem();
+
+        if (generateWorker != null) {
+            generateWorker.cancel(true);
+        }
+        progressBar.setVisible(true);
+        generateWorker = new SwingWorker<>() {
+            @Override
+            protected PlanRows doInBackground() {
+                MealPlan plan = service.generateMealPlan(budget, mealCount, mode);
+                if (plan == null || plan.getMeals().isEmpty()) {
+                    return new PlanRows(plan, new Object[0][], 0);
+                }
+                // DecimalFormat is not thread-safe
+                DecimalFormat format = (DecimalFormat) priceFormat.clone();
+                List<Meal> meals = plan.getMeals();
+                Object[][] rows = new Object[meals.size()][];
+                double totalCost = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    double mealCost = service.calculateMealCost(meals.get(i));
+                    totalCost += mealCost;
+                    rows[i] = new Object[]{meals.get(i).getName(), format.format(mealCost)};
+                }
+                return new PlanRows(plan, rows, totalCost);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                progressBar.setVisible(false);
+                PlanRows planRows;
+                try {
+                    planRows = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                if (planRows.rows.length == 0) {
+                    JOptionPane.showMessageDialog(MealPlanPanel.this, "No meals available.", "Error", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                currentMealPlan = planRows.plan;
+                updateMealPlanTable(planRows);
+            }
+        };
+        generateWorker.execute();
     }
 
     /**
      * Exports the current meal plan to a Markdown file.
+     * The file is written on a background worker, the export button being disabled until it is written.
      * If no meal plan is generated, shows a warning message.
      * If the export is successful, shows a success message.
      * If the export fails, shows an error message.
@@ -140,31 +221,54 @@ public class MealPlanPanel extends JPanel {
         fileChooser.setDialogTitle("Save Meal Plan");
         fileChooser.setFileFilter(new FileNameExtensionFilter("Markdown Files (*.md)", "md"));
         fileChooser.setSelectedFile(new File("meal_plan.md"));
-        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-            if (!filePath.toLowerCase().endsWith(".md")) filePath += ".md";
-            if (service.exportMealPlanToMarkdown(currentMealPlan, filePath)) {
-                JOptionPane.showMessageDialog(this, "Exported successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, "Export failed.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        String selectedPath = fileChooser.getSelectedFile().getAbsolutePath();
+        String filePath = selectedPath.toLowerCase().endsWith(".md") ? selectedPath : selectedPath + ".md";
+        MealPlan plan = currentMealPlan;
+
+        exportButton.setEnabled(false);
+        progressBar.setVisible(true);
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return service.exportMealPlanToMarkdown(plan, filePath);
+            }
+
+            @Override
+            protected void done() {
+                exportButton.setEnabled(true);
+                if (generateWorker == null || generateWorker.isDone()) {
+                    progressBar.setVisible(false);
+                }
+                boolean exported;
+                try {
+                    exported = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    exported = false;
+                }
+                if (exported) {
+                    JOptionPane.showMessageDialog(MealPlanPanel.this, "Exported successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(MealPlanPanel.this, "Export failed.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
     /**
-     * Updates the meal plan table with the current meal plan.
-     * Clears the existing rows and adds new rows for each meal.
-     * Calculates the total cost of the meal plan and updates the label.
+     * Updates the meal plan table with the rows of the generated meal plan.
+     * Replaces the existing rows and updates the total cost label.
+     * @param planRows the rows built by the generation worker
      */
-    private void updateMealPlanTable() {
+    private void updateMealPlanTable(PlanRows planRows) {
         DefaultTableModel model = (DefaultTableModel) mealPlanTable.getModel();
         model.setRowCount(0);
-        double totalCost = 0;
-        for (Meal meal : currentMealPlan.getMeals()) {
-            double mealCost = service.calculateMealCost(meal);
-            totalCost += mealCost;
-            model.addRow(new Object[]{meal.getName(), priceFormat.format(mealCost)});
+        for (Object[] row : planRows.rows) {
+            model.addRow(row);
         }
-        totalCostLabel.setText("Total cost: " + priceFormat.format(totalCost));
+        totalCostLabel.setText("Total cost: " + priceFormat.format(planRows.totalCost));
     }
 }
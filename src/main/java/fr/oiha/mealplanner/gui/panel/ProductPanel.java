@@ -1,6 +1,7 @@
 package fr.oiha.mealplanner.gui.panel;
 
 import fr.oiha.mealplanner.gui.component.CustomButton;
+import fr.oiha.mealplanner.gui.component.ProductTableModel;
 import fr.oiha.mealplanner.gui.frame.AddProductFrame;
 import fr.oiha.mealplanner.gui.frame.ModifyProductFrame;
 import fr.oiha.mealplanner.service.MealPlannerService;
@@ -15,7 +16,8 @@ import java.awt.event.ActionListener;
  * ProductPanel is a JPanel that displays a list of products in a table format.
  * It allows users to add, modify, and delete products.
  * It uses a JToolBar for action buttons and a JTable to display product information.
- * It also handles the loading of products from the MealPlannerService.
+ * It also handles the loading of products from the MealPlannerService and follows the changes of the catalog,
+ * the table showing a catalog version through a ProductTableModel, which only reads the visible products.
  */
 public class ProductPanel extends JPanel {
     private JToolBar toolBar;
@@ -24,6 +26,8 @@ public class ProductPanel extends JPanel {
     private JButton deleteButton;
     private JScrollPane scrollPane;
     private JTable productTable;
+    private ProductTableModel productTableModel;
+    private JProgressBar progressBar;
 
     public ProductPanel() {
         initComponents();
@@ -52,22 +56,15 @@ public class ProductPanel extends JPanel {
         productTable.setShowVerticalLines(true);
         productTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         productTable.setRowSelectionAllowed(true);
-        productTable.setModel(new DefaultTableModel(
-                new Object[][] {
-                },
-                new String[] {
-                        "ID", "Product Name", "Price", "Unit"
-                }
-        ));
-
-        TableColumnModel columnModel = productTable.getColumnModel();
-        columnModel.getColumn(0).setMinWidth(0);
-        columnModel.getColumn(0).setMaxWidth(0);
-        columnModel.getColumn(0).setPreferredWidth(0);
-        columnModel.getColumn(0).setResizable(false);
+        productTableModel = new ProductTableModel();
+        productTable.setModel(productTableModel);
 
         scrollPane.setViewportView(productTable);
         add(scrollPane, BorderLayout.CENTER);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        add(progressBar, BorderLayout.SOUTH);
     }
 
     private void setupEventHandlers() {
@@ -87,7 +84,7 @@ public class ProductPanel extends JPanel {
                     return;
                 }
 
-                int productId = (Integer) productTable.getValueAt(productTable.getSelectedRow(), 0);
+                int productId = productTableModel.getIdAt(productTable.getSelectedRow());
                 ModifyProductFrame dialog = new ModifyProductFrame(ProductPanel.this, productId);
                 dialog.setVisible(true);
             }
@@ -101,26 +98,34 @@ public class ProductPanel extends JPanel {
                     return;
                 }
 
-                int productId = (Integer) productTable.getValueAt(productTable.getSelectedRow(), 0);
+                int productId = productTableModel.getIdAt(productTable.getSelectedRow());
                 MealPlannerService.getInstance().removeProduct(productId);
-                loadProducts();
             }
         });
     }
 
     /**
      * Loads the products from the MealPlannerService and populates the product table.
-     * It clears the existing rows in the table and adds new rows for each product.
+     * The table model is given the current catalog version and the IDs of its products,
+     * collected in the background while a progress bar is shown, and the cells are read on demand.
      */
     public void loadProducts() {
-        ((DefaultTableModel) productTable.getModel()).setRowCount(0);
-        MealPlannerService.getInstance().getProducts().forEach(p -> {
-            ((DefaultTableModel) productTable.getModel()).addRow(new Object[]{
-                    p.getId(),
-                    p.getName(),
-                    p.getPricePerPack(),
-                    p.getUnit()
-            });
-        });
+        productTableModel.refresh(progressBar);
+    }
+
+    /**
+     * Starts following the changes of the catalog when the panel is shown,
+     * so that the rows of the added, modified and deleted products are updated without reloading the table.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        productTableModel.attach();
+    }
+
+    @Override
+    public void removeNotify() {
+        productTableModel.detach();
+        super.removeNotify();
     }
 }
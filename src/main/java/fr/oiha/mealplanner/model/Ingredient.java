@@ -17,6 +17,15 @@ public class Ingredient {
         return product;
     }
 
+    /**
+     * Returns the ID of the product, without reading the whole product
+     * when it is not held by the ingredient.
+     * @return the ID of the product
+     */
+    public int getProductId() {
+        return product.getId();
+    }
+
     public double getQuantity() {
         return quantity;
     }
@@ -6,11 +6,15 @@ import java.util.List;
  * Represents a meal in the meal planner.
  * Contains a name, recipe, and a list of ingredients.
  * The meal has a unique ID.
+ * The recipe can be held in memory, or stored elsewhere and loaded each time it is read,
+ * so that the meals only keep their small fields in memory.
  */
 public class Meal {
     private final int id;
     private String name;
     private String recipe;
+    private transient RecipeLoader recipeLoader;
+    private transient long recipeReference;
     private List<Ingredient> ingredients;
 
     public Meal(int id, String name, String recipe, List<Ingredient> ingredients) {
@@ -20,6 +24,22 @@ public class Meal {
         this.ingredients = ingredients;
     }
 
+    /**
+     * Creates a meal whose recipe is stored outside of the meal.
+     * @param id the ID of the meal
+     * @param name the name of the meal
+     * @param recipeLoader the loader of the recipe
+     * @param recipeReference the reference of the recipe, given to the loader
+     * @param ingredients the ingredients of the meal
+     */
+    public Meal(int id, String name, RecipeLoader recipeLoader, long recipeReference, List<Ingredient> ingredients) {
+        this.id = id;
+        this.name = name;
+        this.recipeLoader = recipeLoader;
+        this.recipeReference = recipeReference;
+        this.ingredients = ingredients;
+    }
+
     public int getId() {
         return id;
     }
@@ -32,12 +52,60 @@ public class Meal {
         this.name = name;
     }
 
-    public String getRecipe() {
+    /**
+     * Returns the recipe of the meal.
+     * A stored recipe is loaded by its loader, the meal does not keep the text.
+     * @return the recipe
+     */
+    public synchronized String getRecipe() {
+        if (recipeLoader != null) {
+            return recipeLoader.loadRecipe(recipeReference);
+        }
         return recipe;
     }
 
-    public void setRecipe(String recipe) {
+    /**
+     * Sets the recipe of the meal, holding it in memory.
+     * @param recipe the recipe
+     */
+    public synchronized void setRecipe(String recipe) {
         this.recipe = recipe;
+        this.recipeLoader = null;
+    }
+
+    /**
+     * Replaces the recipe held in memory by a reference to the same recipe, stored elsewhere.
+     * @param recipeLoader the loader of the recipe
+     * @param recipeReference the reference of the recipe, given to the loader
+     */
+    public synchronized void setRecipeReference(RecipeLoader recipeLoader, long recipeReference) {
+        this.recipe = null;
+        this.recipeLoader = recipeLoader;
+        this.recipeReference = recipeReference;
+    }
+
+    /**
+     * Returns the loader of the recipe.
+     * @return the loader, or null if the recipe is held in memory
+     */
+    public synchronized RecipeLoader getRecipeLoader() {
+        return recipeLoader;
+    }
+
+    public synchronized long getRecipeReference() {
+        return recipeReference;
+    }
+
+    /**
+     * Returns a copy of this meal, with a copy of its list of ingredients.
+     * A stored recipe is not loaded, the copy refers to the same stored recipe.
+     * @return the copy
+     */
+    public synchronized Meal copy() {
+        Meal copy = new Meal(id, name, recipe, List.copyOf(ingredients));
+        copy.recipeLoader = recipeLoader;
+        copy.recipeReference = recipeReference;
+        return copy;
     }
 
     public List<Ingredient> getIngredients() {
@@ -5,7 +5,7 @@ import java.util.List;
 
 /**
  * Represents a meal plan.
- * Contains a name and a list of meals.
+ * Contains a name, a list of meals and the seed it was generated with.
  * The meal plan has a unique ID.
  * It is used to organize meals for a specific date.
  * It is used to manage meal plans for users.
@@ -14,12 +14,19 @@ import java.util.List;
 public class MealPlan {
     private String name;
     private List<Meal> meals;
+    private long seed;
 
     public MealPlan(int id, String name, Date date, List<Meal> meals) {
         this.name = name;
         this.meals = meals;
     }
 
+    public MealPlan(int id, String name, List<Meal> meals, long seed) {
+        this.name = name;
+        this.meals = meals;
+        this.seed = seed;
+    }
+
     public String getName() {
         return name;
     }
@@ -28,4 +35,14 @@ public class MealPlan {
         return meals;
     }
 
+    /**
+     * Returns the seed the plan was generated with.
+     * Generating a plan again with the same seed, budget, number of meals and mode
+     * on the same catalog gives the same meals.
+     * @return the seed of the plan
+     */
+    public long getSeed() {
+        return seed;
+    }
+
 }
@@ -0,0 +1,14 @@
+package fr.oiha.mealplanner.model;
+
+/**
+ * Loads recipes that are stored outside of the meals.
+ * A meal holding a reference to a stored recipe only loads the text when its recipe is read.
+ */
+public interface RecipeLoader {
+    /**
+     * Loads a stored recipe.
+     * @param reference the reference of the recipe, as given when the recipe was stored
+     * @return the text of the recipe
+     */
+    String loadRecipe(long reference);
+}
@@ -0,0 +1,73 @@
+package fr.oiha.mealplanner.model;
+
+import java.util.List;
+
+/**
+ * Represents the shopping list of a meal plan.
+ * Contains one item per product, with the total quantity needed,
+ * the number of packs to buy and their price.
+ * The items are sorted by product name.
+ */
+public class ShoppingList {
+    private final List<Item> items;
+    private final double totalPrice;
+
+    public ShoppingList(List<Item> items) {
+        this.items = List.copyOf(items);
+        double total = 0.0;
+        for (Item item : this.items) {
+            total += item.getTotalPrice();
+        }
+        this.totalPrice = total;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Returns the price of all the packs to buy.
+     * @return the total price of the shopping list
+     */
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    /**
+     * Represents one product of the shopping list.
+     * The number of packs and the price are computed once, when the item is created.
+     */
+    public static class Item {
+        private final Product product;
+        private final double quantity;
+        private final int packCount;
+        private final double totalPrice;
+
+        public Item(Product product, double quantity) {
+            this.product = product;
+            this.quantity = quantity;
+            this.packCount = (int) Math.ceil(quantity / product.getWeightPerPack());
+            this.totalPrice = packCount * product.getPricePerPack();
+        }
+
+        public Product getProduct() {
+            return product;
+        }
+
+        public double getQuantity() {
+            return quantity;
+        }
+
+        public int getPackCount() {
+            return packCount;
+        }
+
+        public double getTotalPrice() {
+            return totalPrice;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package fr.oiha.mealplanner.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.MealPlan;
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.model.ShoppingList;
+import fr.oiha.mealplanner.service.CatalogVersion;
+import fr.oiha.mealplanner.service.GenerationMode;
+import fr.oiha.mealplanner.service.MealPlannerService;
+import fr.oiha.mealplanner.service.ServiceMetrics;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ApiServer exposes the MealPlannerService over a local HTTP/JSON API, for the headless server mode.
+ * It uses the HttpServer of the JDK, bound to the loopback address,
+ * and handles each request on its own virtual thread, so thousands of plan requests can wait or run at once.
+ * Every request reads a single catalog version, so its answer is consistent even while the catalog changes.
+ * It does not use any AWT or Swing class.
+ *
+ * <ul>
+ *     <li>GET /api/products and /api/meals list the catalog, a page at a time with offset and limit</li>
+ *     <li>GET /api/products/{id} and /api/meals/{id} return a single product or meal, with its recipe</li>
+ *     <li>POST /api/plans generates a meal plan</li>
+ *     <li>POST /api/plans/shopping-list returns the shopping list of a plan</li>
+ *     <li>POST /api/plans/markdown returns a plan exported as markdown</li>
+ *     <li>GET /api/metrics returns the text dump of the ServiceMetrics</li>
+ * </ul>
+ * The plan endpoints take either {"maxBudget", "mealCount", "mode", "seed"}, to generate a plan,
+ * or {"mealIds": [...]}, to use the given meals, with at most MAX_PLAN_MEALS meals either way.
+ */
+public class ApiServer {
+    /**
+     * Port used when none is given on the command line.
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * Number of products or meals returned by a list request without a limit.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Maximum number of meals of a plan request.
+     */
+    public static final int MAX_PLAN_MEALS = 10000;
+
+    // Connections waiting to be accepted, large enough for bursts of concurrent plan requests
+    private static final int BACKLOG = 4096;
+
+    private final MealPlannerService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server on the loopback address.
+     * @param service the service to expose
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public ApiServer(MealPlannerService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/products", exchange -> handle(exchange, this::handleProducts));
+        server.createContext("/api/meals", exchange -> handle(exchange, this::handleMeals));
+        server.createContext("/api/plans", exchange -> handle(exchange, this::handlePlans));
+        server.createContext("/api/metrics", exchange -> handle(exchange, this::handleMetrics));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, letting the requests in progress finish for at most a second.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * An error answered to the client with the given HTTP status.
+     */
+    private static class ApiException extends RuntimeException {
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        try (exchange) {
+            try {
+                handler.handle(exchange);
+            } catch (ApiException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (JsonParseException | IllegalArgumentException | IllegalStateException
+                     | UnsupportedOperationException | ClassCastException e) {
+                sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                sendError(exchange, 500, "Internal error");
+            }
+        } catch (IOException e) {
+            // The client went away, or the answer was already started, nothing more can be sent
+        }
+    }
+
+    private void handleProducts(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        String id = subPath(exchange, "/api/products");
+        if (!id.isEmpty()) {
+            Product product = service.getProductById(parseId(id));
+            if (product == null) {
+                throw new ApiException(404, "Product not found: " + id);
+            }
+            sendJson(exchange, json -> writeProduct(json, product));
+            return;
+        }
+
+        CatalogVersion catalog = service.getCatalog();
+        int[] ids = catalog.getProductIds();
+        Map<String, String> query = query(exchange);
+        int offset = Math.min(ids.length, intParameter(query, "offset", 0));
+        int end = (int) Math.min(ids.length, (long) offset + intParameter(query, "limit", DEFAULT_PAGE_SIZE));
+        sendJson(exchange, json -> {
+            json.beginObject();
+            json.name("version").value(catalog.getNumber());
+            json.name("total").value(ids.length);
+            json.name("offset").value(offset);
+            json.name("items").beginArray();
+            for (int i = offset; i < end; i++) {
+                writeProduct(json, catalog.getProductById(ids[i]));
+            }
+            json.endArray();
+            json.endObject();
+        });
+    }
+
+    private void handleMeals(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        CatalogVersion catalog = service.getCatalog();
+        String id = subPath(exchange, "/api/meals");
+        if (!id.isEmpty()) {
+            Meal meal = catalog.getMealById(parseId(id));
+            if (meal == null) {
+                throw new ApiException(404, "Meal not found: " + id);
+            }
+            sendJson(exchange, json -> writeMeal(json, catalog, meal, true));
+            return;
+        }
+
+        int[] ids = catalog.getMealIds();
+        Map<String, String> query = query(exchange);
+        int offset = Math.min(ids.length, intParameter(query, "offset", 0));
+        int end = (int) Math.min(ids.length, (long) offset + intParameter(query, "limit", DEFAULT_PAGE_SIZE));
+        sendJson(exchange, json -> {
+            json.beginObject();
+            json.name("version").value(catalog.getNumber());
+            json.name("total").value(ids.length);
+            json.name("offset").value(offset);
+            json.name("items").beginArray();
+            for (int i = offset; i < end; i++) {
+                writeMeal(json, catalog, catalog.getMealById(ids[i]), false);
+            }
+            json.endArray();
+            json.endObject();
+        });
+    }
+
+    private void handlePlans(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        String action = subPath(exchange, "/api/plans");
+        if (!action.isEmpty() && !action.equals("shopping-list") && !action.equals("markdown")) {
+            throw new ApiException(404, "Unknown endpoint: " + exchange.getRequestURI().getPath());
+        }
+        CatalogVersion catalog = service.getCatalog();
+        MealPlan plan = readPlan(exchange, catalog);
+        switch (action) {
+            case "shopping-list" -> {
+                ShoppingList shoppingList = service.generateShoppingList(plan);
+                sendJson(exchange, json -> writeShoppingList(json, shoppingList));
+            }
+            case "markdown" -> {
+                byte[] markdown = service.formatMealPlanAsMarkdown(plan).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/markdown; charset=utf-8");
+                exchange.sendResponseHeaders(200, markdown.length);
+                exchange.getResponseBody().write(markdown);
+            }
+            default -> sendJson(exchange, json -> writePlan(json, catalog, plan));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        byte[] dump = ServiceMetrics.dumpText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, dump.length);
+        exchange.getResponseBody().write(dump);
+    }
+
+    /**
+     * Reads the plan described by the body of a request.
+     * @param exchange the request
+     * @param catalog the catalog version the meals are read or generated from
+     * @return the plan, which has at least one meal
+     * @throws ApiException if the plan cannot be made
+     */
+    private MealPlan readPlan(HttpExchange exchange, CatalogVersion catalog) throws IOException {
+        JsonObject body;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            JsonElement element = JsonParser.parseReader(reader);
+            if (!element.isJsonObject()) {
+                throw new ApiException(400, "The request body must be a JSON object");
+            }
+            body = element.getAsJsonObject();
+        }
+
+        if (body.has("mealIds")) {
+            JsonArray mealIds = body.getAsJsonArray("mealIds");
+            if (mealIds.size() > MAX_PLAN_MEALS) {
+                throw new ApiException(400, "A plan has at most " + MAX_PLAN_MEALS + " meals");
+            }
+            List<Meal> meals = new ArrayList<>(mealIds.size());
+            for (JsonElement mealId : mealIds) {
+                Meal meal = catalog.getMealById(mealId.getAsInt());
+                if (meal == null) {
+                    throw new ApiException(404, "Meal not found: " + mealId);
+                }
+                meals.add(meal);
+            }
+            if (meals.isEmpty()) {
+                throw new ApiException(400, "A plan needs at least one meal");
+            }
+            String name = body.has("name") ? body.get("name").getAsString() : "Plan de repas";
+            return new MealPlan(0, name, meals, 0);
+        }
+
+        if (!body.has("maxBudget") || !body.has("mealCount")) {
+            throw new ApiException(400, "Missing maxBudget or mealCount");
+        }
+        double maxBudget = body.get("maxBudget").getAsDouble();
+        int mealCount = body.get("mealCount").getAsInt();
+        if (maxBudget <= 0 || mealCount <= 0) {
+            throw new ApiException(400, "maxBudget and mealCount must be positive");
+        }
+        if (mealCount > MAX_PLAN_MEALS) {
+            throw new ApiException(400, "mealCount must be at most " + MAX_PLAN_MEALS);
+        }
+        GenerationMode mode = body.has("mode")
+                ? GenerationMode.valueOf(body.get("mode").getAsString().toUpperCase(Locale.ROOT))
+                : GenerationMode.RANDOM;
+        long seed = body.has("seed") ? body.get("seed").getAsLong() : ThreadLocalRandom.current().nextLong();
+        MealPlan plan = service.generateMealPlan(catalog, maxBudget, mealCount, mode, seed);
+        if (plan == null || plan.getMeals().isEmpty()) {
+            throw new ApiException(404, "No meal fits in the budget");
+        }
+        return plan;
+    }
+
+    private static void writeProduct(JsonWriter json, Product product) throws IOException {
+        json.beginObject();
+        json.name("id").value(product.getId());
+        json.name("name").value(product.getName());
+        json.name("pricePerPack").value(product.getPricePerPack());
+        json.name("weightPerPack").value(product.getWeightPerPack());
+        json.name("unit").value(product.getUnit());
+        json.endObject();
+    }
+
+    private static void writeMeal(JsonWriter json, CatalogVersion catalog, Meal meal, boolean withRecipe) throws IOException {
+        json.beginObject();
+        json.name("id").value(meal.getId());
+        json.name("name").value(meal.getName());
+        json.name("cost").value(catalog.getMealCost(meal));
+        json.name("ingredients").beginArray();
+        for (Ingredient ingredient : meal.getIngredients()) {
+            json.beginObject();
+            json.name("productId").value(ingredient.getProduct().getId());
+            json.name("productName").value(ingredient.getProduct().getName());
+            json.name("quantity").value(ingredient.getQuantity());
+            json.name("unit").value(ingredient.getProduct().getUnit());
+            json.endObject();
+        }
+        json.endArray();
+        if (withRecipe) {
+            json.name("recipe").value(meal.getRecipe());
+        }
+        json.endObject();
+    }
+
+    private static void writePlan(JsonWriter json, CatalogVersion catalog, MealPlan plan) throws IOException {
+        json.beginObject();
+        json.name("name").value(plan.getName());
+        json.name("seed").value(plan.getSeed());
+        double totalCost = 0.0;
+        json.name("meals").beginArray();
+        for (Meal meal : plan.getMeals()) {
+            double cost = catalog.getMealCost(meal);
+            totalCost += cost;
+            json.beginObject();
+            json.name("id").value(meal.getId());
+            json.name("name").value(meal.getName());
+            json.name("cost").value(cost);
+            json.endObject();
+        }
+        json.endArray();
+        json.name("totalCost").value(totalCost);
+        json.endObject();
+    }
+
+    private static void writeShoppingList(JsonWriter json, ShoppingList shoppingList) throws IOException {
+        json.beginObject();
+        json.name("totalPrice").value(shoppingList.getTotalPrice());
+        json.name("items").beginArray();
+        for (ShoppingList.Item item : shoppingList.getItems()) {
+            json.beginObject();
+            json.name("productId").value(item.getProduct().getId());
+            json.name("name").value(item.getProduct().getName());
+            json.name("quantity").value(item.getQuantity());
+            json.name("unit").value(item.getProduct().getUnit());
+            json.name("packCount").value(item.getPackCount());
+            json.name("totalPrice").value(item.getTotalPrice());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private interface JsonContent {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * Sends a JSON answer, streamed to the client with chunked encoding,
+     * so a large list is never held in memory as a whole.
+     */
+    private static void sendJson(HttpExchange exchange, JsonContent content) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            json.setSerializeNulls(false);
+            content.write(json);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        byte[] body = error.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new ApiException(405, "Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    /**
+     * Returns the part of the path after the context path, without the leading slash.
+     */
+    private static String subPath(HttpExchange exchange, String contextPath) {
+        String path = exchange.getRequestURI().getPath().substring(contextPath.length());
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Not found: " + id);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                        pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed = Integer.parseInt(value);
+        if (parsed < 0) {
+            throw new ApiException(400, name + " must not be negative");
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,444 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.model.RecipeLoader;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * BinarySnapshot reads and writes the compact binary snapshot files of the catalog.
+ * A file starts with a header (magic number, format version and kind of records),
+ * followed by a string table holding every distinct name, unit and recipe once,
+ * and by the records, each prefixed with its length in bytes.
+ * Records refer to strings by their index in the table, and doubles are stored raw,
+ * so loading a record is a handful of buffer reads instead of a JSON parse.
+ * Since version 2, a recipe kept in the RecipeStore is written as its reference in the store
+ * instead of its text, so loading the meals does not read the recipes.
+ * Files are read as a buffered stream, one record at a time into a reused ByteBuffer,
+ * so loading needs memory for the strings and a single record, whatever the size of the file.
+ * The file is not memory-mapped, so replacing it on the next save never conflicts with a live mapping.
+ * A product changes file holds the products changed or added over the mapped catalog,
+ * followed by the IDs of the products removed from it, one record each.
+ */
+class BinarySnapshot {
+    private static final int MAGIC = 0x4D504C4E; // "MPLN"
+    private static final int VERSION = 2;
+    private static final int VERSION_INLINE_RECIPES = 1;
+    private static final byte KIND_PRODUCTS = 1;
+    private static final byte KIND_MEALS = 2;
+    private static final byte KIND_PRODUCT_CHANGES = 3;
+    private static final int NO_STRING = -1;
+    private static final byte INGREDIENT_REFERENCE = 0;
+    private static final byte INGREDIENT_EMBEDDED = 1;
+    private static final byte RECIPE_NONE = 0;
+    private static final byte RECIPE_INLINE = 1;
+    private static final byte RECIPE_STORED = 2;
+    private static final int PRODUCT_RECORD_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Writes the given products to a binary snapshot file.
+     * @param file the file to write
+     * @param products the products to write
+     * @throws IOException if the file cannot be written
+     */
+    static void writeProducts(File file, Collection<Product> products) throws IOException {
+        StringTable strings = new StringTable();
+        for (Product p : products) {
+            strings.add(p.getName());
+            strings.add(p.getUnit());
+        }
+
+        try (DataOutputStream out = open(file, KIND_PRODUCTS, strings)) {
+            out.writeInt(products.size());
+            for (Product p : products) {
+                out.writeInt(PRODUCT_RECORD_SIZE);
+                writeProduct(out, p, strings);
+            }
+        }
+    }
+
+    /**
+     * Writes the products changed over a mapped catalog to a product changes file.
+     * @param file the file to write
+     * @param changed the products changed or added
+     * @param removed the IDs of the products removed
+     * @throws IOException if the file cannot be written
+     */
+    static void writeProductChanges(File file, Collection<Product> changed, int[] removed) throws IOException {
+        StringTable strings = new StringTable();
+        for (Product p : changed) {
+            strings.add(p.getName());
+            strings.add(p.getUnit());
+        }
+
+        try (DataOutputStream out = open(file, KIND_PRODUCT_CHANGES, strings)) {
+            out.writeInt(changed.size());
+            for (Product p : changed) {
+                out.writeInt(PRODUCT_RECORD_SIZE);
+                writeProduct(out, p, strings);
+            }
+            out.writeInt(removed.length);
+            for (int id : removed) {
+                out.writeInt(4);
+                out.writeInt(id);
+            }
+        }
+    }
+
+    /**
+     * Writes the given meals to a binary snapshot file.
+     * Ingredients only store the ID of their product and their quantity.
+     * An ingredient whose product is no longer part of the catalog keeps an embedded copy.
+     * A stored recipe is written as its reference, a recipe held in memory as its text.
+     * @param file the file to write
+     * @param meals the meals to write
+     * @param referenced tells whether the product of an ingredient is part of the catalog, and is written by ID
+     * @throws IOException if the file cannot be written
+     */
+    static void writeMeals(File file, Collection<Meal> meals, Predicate<Ingredient> referenced) throws IOException {
+        StringTable strings = new StringTable();
+        for (Meal m : meals) {
+            strings.add(m.getName());
+            if (m.getRecipeLoader() == null) {
+                strings.add(m.getRecipe());
+            }
+            for (Ingredient ingredient : m.getIngredients()) {
+                if (!referenced.test(ingredient)) {
+                    Product product = ingredient.getProduct();
+                    strings.add(product.getName());
+                    strings.add(product.getUnit());
+                }
+            }
+        }
+
+        try (DataOutputStream out = open(file, KIND_MEALS, strings)) {
+            out.writeInt(meals.size());
+            for (Meal m : meals) {
+                List<Ingredient> ingredients = m.getIngredients();
+                boolean storedRecipe = m.getRecipeLoader() != null;
+                String recipe = storedRecipe ? null : m.getRecipe();
+                int recordSize = 4 + 4 + 1 + (storedRecipe ? 8 : recipe != null ? 4 : 0) + 4;
+                boolean[] byId = new boolean[ingredients.size()];
+                for (int i = 0; i < byId.length; i++) {
+                    byId[i] = referenced.test(ingredients.get(i));
+                    recordSize += byId[i] ? 1 + 4 + 8 : 1 + PRODUCT_RECORD_SIZE + 8;
+                }
+
+                out.writeInt(recordSize);
+                out.writeInt(m.getId());
+                out.writeInt(strings.indexOf(m.getName()));
+                if (storedRecipe) {
+                    out.writeByte(RECIPE_STORED);
+                    out.writeLong(m.getRecipeReference());
+                } else if (recipe != null) {
+                    out.writeByte(RECIPE_INLINE);
+                    out.writeInt(strings.indexOf(recipe));
+                } else {
+                    out.writeByte(RECIPE_NONE);
+                }
+                out.writeInt(ingredients.size());
+                for (int i = 0; i < byId.length; i++) {
+                    Ingredient ingredient = ingredients.get(i);
+                    if (byId[i]) {
+                        out.writeByte(INGREDIENT_REFERENCE);
+                        out.writeInt(ingredient.getProductId());
+                    } else {
+                        out.writeByte(INGREDIENT_EMBEDDED);
+                        writeProduct(out, ingredient.getProduct(), strings);
+                    }
+                    out.writeDouble(ingredient.getQuantity());
+                }
+            }
+        }
+    }
+
+    private static DataOutputStream open(File file, byte kind, StringTable strings) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(kind);
+        out.writeInt(strings.size());
+        for (byte[] bytes : strings.encoded) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        return out;
+    }
+
+    private static void writeProduct(DataOutputStream out, Product p, StringTable strings) throws IOException {
+        out.writeInt(p.getId());
+        out.writeInt(strings.indexOf(p.getName()));
+        out.writeDouble(p.getPricePerPack());
+        out.writeDouble(p.getWeightPerPack());
+        out.writeInt(strings.indexOf(p.getUnit()));
+    }
+
+    /**
+     * Reads the products of a binary snapshot file, streaming them one by one to the consumer.
+     * @param file the file to read
+     * @param consumer receives each loaded product
+     * @return the number of products loaded
+     * @throws IOException if the file cannot be read, or is not a complete product snapshot of a supported version.
+     *         The products before the failure have been passed to the consumer, which must then discard them.
+     */
+    static int readProducts(File file, Consumer<Product> consumer) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file, KIND_PRODUCTS)) {
+            int count = reader.count();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(readProduct(reader.nextRecord(), reader.strings));
+            }
+            reader.checkEnd();
+            return count;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted snapshot file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads a product changes file, streaming the changed products and the removed IDs to the consumers.
+     * @param file the file to read
+     * @param changed receives each changed or added product
+     * @param removed receives the ID of each removed product
+     * @return the number of changes read
+     * @throws IOException if the file cannot be read, or is not a complete product changes file of a supported version.
+     *         The changes before the failure have been passed to the consumers, which must then discard them.
+     */
+    static int readProductChanges(File file, Consumer<Product> changed, IntConsumer removed) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file, KIND_PRODUCT_CHANGES)) {
+            int changedCount = reader.count();
+            for (int i = 0; i < changedCount; i++) {
+                changed.accept(readProduct(reader.nextRecord(), reader.strings));
+            }
+            int removedCount = reader.count();
+            for (int i = 0; i < removedCount; i++) {
+                removed.accept(reader.nextRecord().getInt());
+            }
+            reader.checkEnd();
+            return changedCount + removedCount;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted snapshot file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads the meals of a binary snapshot file, streaming them one by one to the consumer.
+     * Ingredients are created by the catalog, from the IDs of their products,
+     * so every meal shares the product instances of the catalog, or refers to its mapped products.
+     * Stored recipes are not read, the meals refer to them through the recipe loader.
+     * @param file the file to read
+     * @param ingredients creates the ingredient using a catalog product, or returns null
+     * @param recipeLoader the loader of the stored recipes
+     * @param consumer receives each loaded meal
+     * @return the number of meals loaded
+     * @throws IOException if the file cannot be read, is not a complete meal snapshot of a supported version,
+     *         or has an ingredient referring to a product that is not in the catalog.
+     *         The meals before the failure have been passed to the consumer, which must then discard them.
+     */
+    static int readMeals(File file, IngredientResolver ingredients, RecipeLoader recipeLoader, Consumer<Meal> consumer) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file, KIND_MEALS)) {
+            boolean inlineRecipes = reader.version == VERSION_INLINE_RECIPES;
+            String[] strings = reader.strings;
+            int count = reader.count();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = reader.nextRecord();
+                int id = buffer.getInt();
+                String name = string(strings, buffer.getInt());
+                byte recipeKind = inlineRecipes ? RECIPE_INLINE : buffer.get();
+                String recipe = null;
+                long recipeReference = -1;
+                if (recipeKind == RECIPE_INLINE) {
+                    recipe = string(strings, buffer.getInt());
+                } else if (recipeKind == RECIPE_STORED) {
+                    recipeReference = buffer.getLong();
+                }
+                int ingredientCount = buffer.getInt();
+                List<Ingredient> mealIngredients = new ArrayList<>(Math.min(ingredientCount, buffer.remaining()));
+                for (int j = 0; j < ingredientCount; j++) {
+                    Ingredient ingredient;
+                    if (buffer.get() == INGREDIENT_REFERENCE) {
+                        int productId = buffer.getInt();
+                        ingredient = ingredients.resolve(productId, buffer.getDouble());
+                        if (ingredient == null) {
+                            throw new IOException("Unknown product ID " + productId + " in meal " + id);
+                        }
+                    } else {
+                        Product embedded = readProduct(buffer, strings);
+                        double quantity = buffer.getDouble();
+                        ingredient = ingredients.resolve(embedded.getId(), quantity);
+                        if (ingredient == null) {
+                            ingredient = new Ingredient(embedded, quantity);
+                        }
+                    }
+                    mealIngredients.add(ingredient);
+                }
+                if (recipeReference >= 0) {
+                    consumer.accept(new Meal(id, name, recipeLoader, recipeReference, mealIngredients));
+                } else {
+                    consumer.accept(new Meal(id, name, recipe, mealIngredients));
+                }
+            }
+            reader.checkEnd();
+            return count;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted snapshot file: " + file, e);
+        }
+    }
+
+    private static Product readProduct(ByteBuffer buffer, String[] strings) {
+        int id = buffer.getInt();
+        String name = string(strings, buffer.getInt());
+        double pricePerPack = buffer.getDouble();
+        double weightPerPack = buffer.getDouble();
+        String unit = string(strings, buffer.getInt());
+        return new Product(id, name, pricePerPack, weightPerPack, unit);
+    }
+
+    /**
+     * Reads a snapshot file as a stream: the header and the string table first,
+     * then one record at a time into a reused buffer, so only the strings and the current record are in memory.
+     */
+    private static class SnapshotReader implements Closeable {
+        private final File file;
+        private final long length;
+        private final DataInputStream in;
+        private final int version;
+        private final String[] strings;
+        private ByteBuffer record = ByteBuffer.allocate(256);
+
+        SnapshotReader(File file, byte kind) throws IOException {
+            this.file = file;
+            this.length = file.length();
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+                version = in.readInt();
+                if (version != VERSION && version != VERSION_INLINE_RECIPES) {
+                    throw new IOException("Unsupported snapshot version " + version + ": " + file);
+                }
+                if (in.readByte() != kind) {
+                    throw new IOException("Unexpected kind of snapshot: " + file);
+                }
+
+                strings = new String[checkedCount()];
+                byte[] bytes = new byte[256];
+                for (int i = 0; i < strings.length; i++) {
+                    int size = checkedSize(in.readInt());
+                    if (size > bytes.length) {
+                        bytes = new byte[size];
+                    }
+                    in.readFully(bytes, 0, size);
+                    strings[i] = new String(bytes, 0, size, StandardCharsets.UTF_8);
+                }
+            } catch (EOFException e) {
+                in.close();
+                throw new IOException("Truncated snapshot file: " + file, e);
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the number of records.
+         */
+        int count() throws IOException {
+            try {
+                return checkedCount();
+            } catch (EOFException e) {
+                throw new IOException("Truncated snapshot file: " + file, e);
+            }
+        }
+
+        /**
+         * Reads the next record, without its length prefix.
+         * @return the buffer holding the record, valid until the next call
+         */
+        ByteBuffer nextRecord() throws IOException {
+            try {
+                int size = checkedSize(in.readInt());
+                if (size > record.capacity()) {
+                    record = ByteBuffer.allocate(Math.max(size, record.capacity() * 2));
+                }
+                in.readFully(record.array(), 0, size);
+                return record.clear().limit(size);
+            } catch (EOFException e) {
+                throw new IOException("Truncated snapshot file: " + file, e);
+            }
+        }
+
+        /**
+         * Rejects data after the last record.
+         */
+        void checkEnd() throws IOException {
+            if (in.read() >= 0) {
+                throw new IOException("Unexpected data at the end of snapshot file: " + file);
+            }
+        }
+
+        // A count or a size larger than the file comes from a corrupted file, and is not allocated
+        private int checkedCount() throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > length) {
+                throw new IOException("Corrupted snapshot file: " + file);
+            }
+            return count;
+        }
+
+        private int checkedSize(int size) throws IOException {
+            if (size < 0 || size > length) {
+                throw new IOException("Corrupted snapshot file: " + file);
+            }
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    /**
+     * The distinct strings of a snapshot, in the order they were first added.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+
+        void add(String s) {
+            if (s != null && !indexes.containsKey(s)) {
+                indexes.put(s, encoded.size());
+                encoded.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int indexOf(String s) {
+            return s == null ? NO_STRING : indexes.get(s);
+        }
+
+        int size() {
+            return encoded.size();
+        }
+    }
+}
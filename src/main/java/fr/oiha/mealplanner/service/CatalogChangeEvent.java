@@ -0,0 +1,81 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.List;
+
+/**
+ * CatalogChangeEvent describes a change of the catalog made by MealPlannerService:
+ * the catalog version it published, and the products and meals added, updated or removed by it.
+ * Modifying a product also updates the meals using it, since their costs change,
+ * so its event has a change for the product and one for each of these meals.
+ * @see CatalogChangeListener
+ */
+public final class CatalogChangeEvent {
+    /**
+     * The kind of entity changed.
+     */
+    public enum Entity {
+        PRODUCT,
+        MEAL
+    }
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+
+    /**
+     * The change of a single product or meal.
+     */
+    public static final class Change {
+        private final Entity entity;
+        private final Type type;
+        private final int id;
+
+        public Change(Entity entity, Type type, int id) {
+            this.entity = entity;
+            this.type = type;
+            this.id = id;
+        }
+
+        public Entity getEntity() {
+            return entity;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    private final CatalogVersion version;
+    private final List<Change> changes;
+
+    CatalogChangeEvent(CatalogVersion version, List<Change> changes) {
+        this.version = version;
+        this.changes = List.copyOf(changes);
+    }
+
+    /**
+     * Returns the catalog version published by the change.
+     * Its number is one more than the number of the version the change was made on.
+     * @return the new version
+     */
+    public CatalogVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the changes of the products and meals.
+     * @return the changes, in the order they were made
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,17 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.EventListener;
+
+/**
+ * Listener of the changes of the catalog of MealPlannerService.
+ * @see MealPlannerService#addCatalogChangeListener(CatalogChangeListener)
+ */
+public interface CatalogChangeListener extends EventListener {
+    /**
+     * Called after each change of the catalog, once the new version is published and persisted.
+     * It is called on the thread that made the change, while other changes wait,
+     * so the events of successive versions arrive in order, and the listener must return quickly.
+     * @param event the change
+     */
+    void catalogChanged(CatalogChangeEvent event);
+}
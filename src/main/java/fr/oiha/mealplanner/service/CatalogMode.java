@@ -0,0 +1,33 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.Locale;
+
+/**
+ * The ways MealPlannerService can hold the product catalog in memory.
+ * The mode is read from the "mealplanner.catalog" system property, HEAP by default.
+ * An unknown value is reported, and the default mode is used instead.
+ */
+public enum CatalogMode {
+    /**
+     * Every product is loaded from the snapshot into a heap object on startup.
+     */
+    HEAP,
+
+    /**
+     * The product catalog is memory-mapped from products.dat, a fixed-width record file
+     * built from the snapshot when it is missing, and rebuilt by MealPlannerService.compactProductCatalog.
+     * Products are decoded when they are looked up, meals refer to them by ID,
+     * and only the products that are edited are kept as heap objects, and saved apart from the catalog file.
+     */
+    MAPPED;
+
+    static CatalogMode fromSystemProperty() {
+        String mode = System.getProperty("mealplanner.catalog", HEAP.name());
+        try {
+            return valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown catalog mode \"" + mode + "\", using " + HEAP);
+            return HEAP;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.util.PersistentIntMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+/**
+ * CatalogVersion is an immutable version of the catalog: its products, its meals, and the cost of each meal.
+ * MealPlannerService publishes a new version after every change, and readers take the current version
+ * without locking, then see the same catalog for as long as they keep using it.
+ * The products and meals of a version are never modified: a changed product or meal is replaced by a new instance,
+ * and the meals using a changed product are replaced by meals using the new instance.
+ * A version shares every unchanged product, meal and cost with the previous version,
+ * since they are kept in persistent maps.
+ * In MAPPED catalog mode, the products that were never changed are read from the mapped catalog,
+ * and the meals refer to them by ID, so only the changed products are held in memory.
+ */
+public final class CatalogVersion {
+    private final long number;
+    private final PersistentIntMap<Product> products;
+    private final MappedProductCatalog mappedProducts;
+    private final PersistentIntMap<Product> removedMappedProducts;
+    private final PersistentIntMap<Meal> meals;
+    private final PersistentIntMap<Double> mealCosts;
+    private final int productCount;
+    // Built on first use, from this version only, so concurrent builds give the same generator
+    private volatile MealPlanGenerator planGenerator;
+
+    /**
+     * Creates the empty first version of a catalog.
+     * @param mappedProducts the mapped product catalog, or null in HEAP catalog mode
+     */
+    CatalogVersion(MappedProductCatalog mappedProducts) {
+        this(0, PersistentIntMap.empty(), mappedProducts, PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty(),
+                mappedProducts == null ? 0 : mappedProducts.size());
+    }
+
+    private CatalogVersion(long number, PersistentIntMap<Product> products, MappedProductCatalog mappedProducts,
+                           PersistentIntMap<Product> removedMappedProducts, PersistentIntMap<Meal> meals,
+                           PersistentIntMap<Double> mealCosts, int productCount) {
+        this.number = number;
+        this.products = products;
+        this.mappedProducts = mappedProducts;
+        this.removedMappedProducts = removedMappedProducts;
+        this.meals = meals;
+        this.mealCosts = mealCosts;
+        this.productCount = productCount;
+    }
+
+    /**
+     * Returns the number of this version, incremented by each change of the catalog.
+     * @return the version number
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the product with the given ID.
+     * In MAPPED catalog mode, a product that was never changed is decoded into a new Product view.
+     * @param id the ID of the product
+     * @return the product, or null if no product has this ID
+     */
+    public Product getProductById(int id) {
+        Product product = products.get(id);
+        if (product == null && mappedProducts != null && !removedMappedProducts.containsKey(id)) {
+            return mappedProducts.get(id);
+        }
+        return product;
+    }
+
+    /**
+     * Returns whether this version has a product with the given ID, without decoding it.
+     * @param id the ID of the product
+     * @return true if the product exists
+     */
+    boolean containsProduct(int id) {
+        return products.containsKey(id) || mappedProducts != null && !removedMappedProducts.containsKey(id) && mappedProducts.contains(id);
+    }
+
+    /**
+     * Returns whether an ingredient uses the product of this version with the same ID,
+     * rather than a product that was removed or replaced since.
+     * @param ingredient the ingredient
+     * @return true if the ingredient uses the product of this version
+     */
+    boolean usesCatalogProduct(Ingredient ingredient) {
+        int id = ingredient.getProductId();
+        if (ingredient instanceof MappedProductCatalog.MappedIngredient mapped) {
+            return mapped.getCatalog() == mappedProducts && !products.containsKey(id) && !removedMappedProducts.containsKey(id);
+        }
+        Product product = products.get(id);
+        return product != null && product == ingredient.getProduct();
+    }
+
+    /**
+     * Returns an ingredient using the product of this version with the given ID,
+     * by reference to the mapped catalog if the product is only there.
+     * @param productId the ID of the product
+     * @param quantity the quantity of the ingredient
+     * @return the ingredient, or null if no product has this ID
+     */
+    Ingredient ingredient(int productId, double quantity) {
+        return ingredient(products.get(productId), mappedProducts, removedMappedProducts.containsKey(productId), productId, quantity);
+    }
+
+    private static Ingredient ingredient(Product product, MappedProductCatalog mappedProducts, boolean removed, int productId, double quantity) {
+        if (product != null) {
+            return new Ingredient(product, quantity);
+        }
+        if (mappedProducts != null && !removed && mappedProducts.contains(productId)) {
+            return mappedProducts.ingredient(productId, quantity);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the meal with the given ID.
+     * @param id the ID of the meal
+     * @return the meal, or null if no meal has this ID
+     */
+    public Meal getMealById(int id) {
+        return meals.get(id);
+    }
+
+    /**
+     * Returns the cost of a meal.
+     * The cost of a meal of this version is read from the cost table of the version,
+     * other meals are calculated by iterating through their ingredients.
+     * @param meal the meal to get the cost for
+     * @return the total cost of the meal
+     */
+    public double getMealCost(Meal meal) {
+        if (meals.get(meal.getId()) == meal) {
+            return mealCosts.get(meal.getId());
+        }
+        return computeCost(meal);
+    }
+
+    /**
+     * Returns the meals of this version.
+     * @return a read-only collection of the meals, in no particular order
+     */
+    public Collection<Meal> getMeals() {
+        return meals.values();
+    }
+
+    /**
+     * Returns the products of this version.
+     * In MAPPED catalog mode, the products are decoded while the collection is iterated.
+     * @return a read-only collection of the products
+     */
+    public Collection<Product> getProducts() {
+        if (mappedProducts == null) {
+            return products.values();
+        }
+        return mappedProducts.overlay(products, removedMappedProducts);
+    }
+
+    /**
+     * Returns the number of products of this version, without iterating them.
+     * @return the number of products
+     */
+    public int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * Returns the IDs of every product of this version, in ascending order.
+     * @return the sorted product IDs
+     */
+    public int[] getProductIds() {
+        IntStream.Builder ids = IntStream.builder();
+        int firstHeapId = 0;
+        if (mappedProducts != null) {
+            firstHeapId = mappedProducts.slotCount();
+            for (int id = 0; id < firstHeapId; id++) {
+                if (products.containsKey(id) || !removedMappedProducts.containsKey(id) && mappedProducts.contains(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        int heapFrom = firstHeapId;
+        products.forEachValue(p -> {
+            if (p.getId() >= heapFrom) {
+                ids.add(p.getId());
+            }
+        });
+        int[] sorted = ids.build().toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns the IDs of every meal of this version, in ascending order.
+     * @return the sorted meal IDs
+     */
+    public int[] getMealIds() {
+        int[] ids = new int[meals.size()];
+        int[] count = new int[1];
+        meals.forEachValue(m -> ids[count[0]++] = m.getId());
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Returns the products held in memory, which are all the products in HEAP catalog mode,
+     * and the products changed or added since the catalog was mapped in MAPPED catalog mode.
+     * @return a read-only collection of the heap products
+     */
+    Collection<Product> getHeapProducts() {
+        return Collections.unmodifiableCollection(products.values());
+    }
+
+    /**
+     * Returns whether the products of this version are laid over a mapped catalog.
+     * @return true in MAPPED catalog mode
+     */
+    boolean isMapped() {
+        return mappedProducts != null;
+    }
+
+    /**
+     * Returns the mapped catalog under the products of this version.
+     * @return the mapped catalog, or null in HEAP catalog mode
+     */
+    MappedProductCatalog getMappedProducts() {
+        return mappedProducts;
+    }
+
+    /**
+     * Returns the IDs of the mapped catalog products removed since the catalog was mapped.
+     * @return the removed IDs, in no particular order
+     */
+    int[] getRemovedMappedProductIds() {
+        int[] ids = new int[removedMappedProducts.size()];
+        int[] count = new int[1];
+        removedMappedProducts.forEachValue(p -> ids[count[0]++] = p.getId());
+        return ids;
+    }
+
+    /**
+     * Returns the plan generator for the meals of this version.
+     * The candidates and their costs are collected on first use only.
+     * @return the plan generator
+     */
+    MealPlanGenerator getPlanGenerator() {
+        MealPlanGenerator generator = planGenerator;
+        if (generator == null) {
+            PlanCandidatesEvent event = new PlanCandidatesEvent();
+            event.begin();
+            Meal[] candidates = meals.values().toArray(new Meal[0]);
+            double[] costs = new double[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                costs[i] = mealCosts.get(candidates[i].getId());
+            }
+            generator = new MealPlanGenerator(candidates, costs);
+            planGenerator = generator;
+            event.end();
+            if (event.shouldCommit()) {
+                event.version = number;
+                event.candidates = candidates.length;
+                event.commit();
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * Starts the next version of the catalog from this one.
+     * @return an editor of the next version
+     */
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Calculates the cost of a meal by walking its ingredients.
+     * @param meal the meal to calculate the cost for
+     * @return the total cost of the meal
+     */
+    static double computeCost(Meal meal) {
+        double cost = 0.0;
+        for (Ingredient ingredient : meal.getIngredients()) {
+            if (ingredient instanceof MappedProductCatalog.MappedIngredient mapped) {
+                cost += mapped.getCost();
+            } else {
+                Product product = ingredient.getProduct();
+                cost += (ingredient.getQuantity() / product.getWeightPerPack()) * product.getPricePerPack();
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Editor collects the changes of the next version of the catalog.
+     * The version it was created from is not changed, and the new version is only visible once built.
+     * The cost of a meal is calculated when the meal is put.
+     * It is not thread-safe, and is only used by the writer of the catalog.
+     */
+    static final class Editor {
+        private final CatalogVersion base;
+        private final PersistentIntMap.Builder<Product> products;
+        private final PersistentIntMap.Builder<Product> removedMappedProducts;
+        private final PersistentIntMap.Builder<Meal> meals;
+        private final PersistentIntMap.Builder<Double> mealCosts;
+        private int productCount;
+
+        private Editor(CatalogVersion base) {
+            this.base = base;
+            this.products = base.products.toBuilder();
+            this.removedMappedProducts = base.removedMappedProducts.toBuilder();
+            this.meals = base.meals.toBuilder();
+            this.mealCosts = base.mealCosts.toBuilder();
+            this.productCount = base.productCount;
+        }
+
+        /**
+         * Returns the product with the given ID, as getProductById.
+         * @param id the ID of the product
+         * @return the product, or null if no product has this ID
+         */
+        Product getProduct(int id) {
+            Product product = products.get(id);
+            if (product == null && base.mappedProducts != null && !removedMappedProducts.containsKey(id)) {
+                return base.mappedProducts.get(id);
+            }
+            return product;
+        }
+
+        /**
+         * Returns an ingredient using the product with the given ID, as CatalogVersion.ingredient.
+         * A product that is only in the mapped catalog is referred to by ID, and not held in memory.
+         * @param productId the ID of the product
+         * @param quantity the quantity of the ingredient
+         * @return the ingredient, or null if no product has this ID
+         */
+        Ingredient ingredient(int productId, double quantity) {
+            return CatalogVersion.ingredient(products.get(productId), base.mappedProducts,
+                    removedMappedProducts.containsKey(productId), productId, quantity);
+        }
+
+        void putProduct(Product product) {
+            if (getProduct(product.getId()) == null) {
+                productCount++;
+            }
+            products.put(product.getId(), product);
+            removedMappedProducts.remove(product.getId());
+        }
+
+        /**
+         * Removes a product from the catalog.
+         * @param id the ID of the product
+         * @return the removed product, or null if no product has this ID
+         */
+        Product removeProduct(int id) {
+            Product product = getProduct(id);
+            if (product != null) {
+                products.remove(id);
+                if (base.mappedProducts != null && base.mappedProducts.contains(id)) {
+                    removedMappedProducts.put(id, product);
+                }
+                productCount--;
+            }
+            return product;
+        }
+
+        Meal getMeal(int id) {
+            return meals.get(id);
+        }
+
+        /**
+         * Puts a meal in the catalog, replacing the meal with the same ID.
+         * The meal and its list of ingredients must not be modified afterwards.
+         * @param meal the meal
+         */
+        void putMeal(Meal meal) {
+            meals.put(meal.getId(), meal);
+            mealCosts.put(meal.getId(), computeCost(meal));
+        }
+
+        /**
+         * Removes a meal from the catalog.
+         * @param id the ID of the meal
+         * @return the removed meal, or null if no meal has this ID
+         */
+        Meal removeMeal(int id) {
+            Meal meal = meals.get(id);
+            if (meal != null) {
+                meals.remove(id);
+                mealCosts.remove(id);
+            }
+            return meal;
+        }
+
+        /**
+         * Builds the next version.
+         * @return the new version
+         */
+        CatalogVersion build() {
+            return new CatalogVersion(base.number + 1, products.build(), base.mappedProducts,
+                    removedMappedProducts.build(), meals.build(), mealCosts.build(), productCount);
+        }
+    }
+}
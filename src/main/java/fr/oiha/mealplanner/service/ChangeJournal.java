@@ -0,0 +1,194 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.model.Product;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * ChangeJournal is an append-only log of the changes made to products and meals.
+ * Each change is written as one compact JSON record per line,
+ * so saving a single edit costs the size of the record instead of the size of the catalog.
+ * Records always hold the full state of the entity, so replaying a record twice is harmless.
+ * The journal is replayed on top of the last snapshot on startup,
+ * and cleared after the snapshot is rewritten.
+ * Records are formatted by the thread making the change and written by the SaveScheduler.
+ */
+class ChangeJournal {
+    private static final String PUT_PRODUCT = "putProduct";
+    private static final String REMOVE_PRODUCT = "removeProduct";
+    private static final String PUT_MEAL = "putMeal";
+    private static final String REMOVE_MEAL = "removeMeal";
+
+    /**
+     * Receives the records of the journal during a replay.
+     */
+    interface Handler {
+        void putProduct(Product product);
+
+        void removeProduct(int id);
+
+        void putMeal(Meal meal);
+
+        void removeMeal(int id);
+    }
+
+    private final File file;
+    private final SaveScheduler scheduler;
+    private final Gson gson;
+    // Records appended since startup, the replayed ones included
+    private final AtomicInteger appended = new AtomicInteger();
+    // Appended records handled by the writer thread, only used on that thread
+    private int written;
+    // Records handled by the writer thread before the journal was last cleared
+    private volatile int cleared;
+
+    /**
+     * Creates a journal stored in the given file.
+     * @param file the journal file, created on the first append
+     * @param scheduler the scheduler running the writes
+     * @param catalog returns the current catalog version, which ingredients refer to by product ID
+     */
+    ChangeJournal(File file, SaveScheduler scheduler, Supplier<CatalogVersion> catalog) {
+        this.file = file;
+        this.scheduler = scheduler;
+        this.gson = new GsonBuilder()
+                .registerTypeAdapter(Ingredient.class, new DataStorageService.IngredientAdapter(
+                        (productId, quantity) -> catalog.get().ingredient(productId, quantity),
+                        ingredient -> catalog.get().usesCatalogProduct(ingredient)))
+                .create();
+    }
+
+    /**
+     * Replays every record of the journal, in the order they were written.
+     * A truncated last record, left by a crash during an append, is ignored.
+     * @param handler the handler receiving the records
+     * @return the number of records replayed
+     */
+    int replay(Handler handler) {
+        int replayed = replayRecords(handler);
+        appended.set(replayed);
+        written = replayed;
+        cleared = 0;
+        return replayed;
+    }
+
+    private int replayRecords(Handler handler) {
+        if (!file.exists()) {
+            return 0;
+        }
+        int replayed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    apply(JsonParser.parseString(line).getAsJsonObject(), handler);
+                    replayed++;
+                } catch (JsonParseException | IllegalStateException e) {
+                    System.err.println("Ignoring unreadable journal record " + (replayed + 1) + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return replayed;
+    }
+
+    private void apply(JsonObject record, Handler handler) {
+        String op = record.get("op").getAsString();
+        switch (op) {
+            case PUT_PRODUCT -> handler.putProduct(gson.fromJson(record.get("product"), Product.class));
+            case REMOVE_PRODUCT -> handler.removeProduct(record.get("id").getAsInt());
+            case PUT_MEAL -> handler.putMeal(gson.fromJson(record.get("meal"), Meal.class));
+            case REMOVE_MEAL -> handler.removeMeal(record.get("id").getAsInt());
+            default -> throw new JsonParseException("Unknown journal operation: " + op);
+        }
+    }
+
+    void appendProduct(Product product) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", PUT_PRODUCT);
+        record.add("product", gson.toJsonTree(product));
+        append(record);
+    }
+
+    void appendProductRemoval(int id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", REMOVE_PRODUCT);
+        record.addProperty("id", id);
+        append(record);
+    }
+
+    void appendMeal(Meal meal) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", PUT_MEAL);
+        JsonObject json = gson.toJsonTree(meal).getAsJsonObject();
+        // A stored recipe is not held by the meal, the record must still contain its text
+        String recipe = meal.getRecipe();
+        if (recipe != null) {
+            json.addProperty("recipe", recipe);
+        }
+        record.add("meal", json);
+        append(record);
+    }
+
+    void appendMealRemoval(int id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", REMOVE_MEAL);
+        record.addProperty("id", id);
+        append(record);
+    }
+
+    private void append(JsonObject record) {
+        String line = gson.toJson(record) + '\n';
+        appended.incrementAndGet();
+        scheduler.execute(() -> {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                writer.write(line);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                written++;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of records in the journal.
+     * The records still waiting for the writer thread are counted,
+     * including the ones appended while the journal was being cleared, which are written after it.
+     * @return the number of records in the journal file or waiting to be written to it
+     */
+    int size() {
+        return appended.get() - cleared;
+    }
+
+    /**
+     * Empties the journal.
+     * Must only be called on the writer thread,
+     * once a snapshot containing every change written to the journal so far has been written.
+     * The records written so far are no longer counted, in the order of the appends,
+     * so the records still waiting behind the clear keep counting towards the compaction threshold.
+     */
+    void clear() {
+        try {
+            new FileOutputStream(file).close();
+            cleared = written;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,207 +4,730 @@ import fr.oiha.mealplanner.model.Ingredient;
 import fr.oiha.mealplanner.model.Meal;
 import fr.oiha.mealplanner.model.MealPlan;
 import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.model.RecipeLoader;
+import fr.oiha.mealplanner.model.ShoppingList;
+import fr.oiha.mealplanner.util.PersistentIntMap;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * DataStorageService is responsible for saving and loading data to and from files.
- * It uses Gson for JSON serialization and deserialization.
+ * The catalog is stored as compact binary snapshots, "products.bin" and "meals.bin".
+ * In MAPPED catalog mode, the products are mapped from "products.dat",
+ * and the products changed since it was built are saved apart, in "products-changes.bin".
+ * The name index of the mapped products is derived from "products.dat" into "products-names.dat".
+ * JSON, through Gson, is kept as the import and export format of the catalog.
  * It handles the storage of products, meals, and meal plans.
+ * The files are in the directory given by the "mealplanner.dir" system property,
+ * or in the working directory by default.
  */
 public class DataStorageService {
+    /**
+     * System property naming the directory of the data files.
+     */
+    public static final String DATA_DIRECTORY_PROPERTY = "mealplanner.dir";
+
+    /**
+     * Returns a file of the data directory.
+     * @param name the name of the file
+     * @return the file
+     */
+    static File dataFile(String name) {
+        String directory = System.getProperty(DATA_DIRECTORY_PROPERTY);
+        return directory == null ? new File(name) : new File(directory, name);
+    }
 
     /**
      * Saves a set of products to a JSON file.
-     * The file is named "products.json".
+     * The file is named "products.json" and is replaced atomically.
      * The products are serialized using Gson.
      * @param products the set of products to save
+     * @return true if the file was written
      */
-    public static void saveProducts(Set<Product> products) {
+    public static boolean saveProducts(Collection<Product> products) {
+        long start = ServiceMetrics.start();
         final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String json = gson.toJson(products);
+        return writeAtomically("products.json", gson, products, ServiceOperation.SAVE_PRODUCTS, start);
+    }
 
-        try (FileWriter writer = new FileWriter("products.json")) {
-            writer.write(json);
+    /**
+     * Loads products from a JSON file into a list.
+     * @return a list of products
+     * @see #loadProducts(Consumer)
+     */
+    public List<Product> loadProducts() {
+        List<Product> products = new ArrayList<>();
+        loadProducts(products::add);
+        return products;
+    }
+
+    /**
+     * Loads products from a JSON file, streaming them one by one to the consumer.
+     * The file is named "products.json".
+     * Each product is handed to the consumer as soon as it is parsed,
+     * without building an intermediate array.
+     * @param consumer receives each loaded product
+     * @return the number of products loaded, or -1 if the file cannot be read or parsed
+     */
+    public int loadProducts(Consumer<Product> consumer) {
+        long start = ServiceMetrics.start();
+        return streamArray(dataFile("products.json"), new Gson(), Product.class, consumer, ServiceOperation.LOAD_PRODUCTS, start);
+    }
+
+    /**
+     * Saves a set of meals to a JSON file.
+     * The file is named "meals.json" and is replaced atomically.
+     * Ingredients only store the ID of their product and their quantity,
+     * the product itself is stored once in "products.json".
+     * An ingredient whose product is no longer part of the catalog keeps an embedded copy.
+     * @param meals the set of meals to save
+     * @param products the product catalog the ingredients refer to
+     * @return true if the file was written
+     */
+    public static boolean saveMeals(Collection<Meal> meals, Collection<Product> products) {
+        return saveMeals(meals, usesProducts(products));
+    }
+
+    /**
+     * Saves a set of meals to a JSON file, as saveMeals(Collection, Collection).
+     * @param meals the set of meals to save
+     * @param referenced tells whether the product of an ingredient is part of the catalog, and is saved by ID
+     * @return true if the file was written
+     */
+    static boolean saveMeals(Collection<Meal> meals, Predicate<Ingredient> referenced) {
+        long start = ServiceMetrics.start();
+        final Gson gson = new GsonBuilder()
+                .registerTypeAdapter(Ingredient.class, new IngredientAdapter(null, referenced))
+                .setPrettyPrinting()
+                .create();
+        return writeAtomically("meals.json", gson, meals, ServiceOperation.SAVE_MEALS, start);
+    }
+
+    /**
+     * Serializes an object to a temporary file, then renames it over the target file.
+     * The rename is atomic, so the target file always holds either the old or the new content,
+     * even if the application stops while writing.
+     * @param fileName the name of the target file
+     * @param gson the Gson instance used to serialize
+     * @param content the object to serialize
+     * @param operation the operation recorded in the metrics
+     * @param start the start time of the operation
+     * @return true if the target file was replaced, false if the file cannot be written
+     */
+    private static boolean writeAtomically(String fileName, Gson gson, Object content, ServiceOperation operation, long start) {
+        return writeAtomically(fileName, temporary -> {
+            try (Writer writer = new BufferedWriter(new FileWriter(temporary))) {
+                gson.toJson(content, writer);
+            }
+        }, operation, start);
+    }
+
+    /**
+     * Writes a temporary file, then renames it over the target file.
+     * @param fileName the name of the target file
+     * @param contentWriter writes the content to the temporary file
+     * @param operation the operation recorded in the metrics, with the size of the written file
+     * @param start the start time of the operation
+     * @return true if the target file was replaced, false if the file cannot be written
+     */
+    private static boolean writeAtomically(String fileName, ContentWriter contentWriter, ServiceOperation operation, long start) {
+        File target = dataFile(fileName);
+        File temporary = new File(target.getPath() + ".tmp");
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try {
+            contentWriter.write(temporary);
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            event.complete(operation, target, false);
+            ServiceMetrics.recordFile(operation, start, target);
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            event.complete(operation, target, true);
+            ServiceMetrics.record(operation, start, 0, true);
+            return false;
         }
     }
 
-    public List<Product> loadProducts() {
-        File file = new File("products.json");
+    /**
+     * Writes content to a file.
+     */
+    private interface ContentWriter {
+        void write(File file) throws IOException;
+    }
+
+    /**
+     * Saves a set of products to a binary snapshot file.
+     * The file is named "products.bin" and is replaced atomically.
+     * @param products the set of products to save
+     * @return true if the snapshot was written
+     * @see BinarySnapshot
+     */
+    public static boolean saveProductSnapshot(Collection<Product> products) {
+        long start = ServiceMetrics.start();
+        return writeAtomically("products.bin", file -> BinarySnapshot.writeProducts(file, products),
+                ServiceOperation.SAVE_PRODUCT_SNAPSHOT, start);
+    }
+
+    /**
+     * Saves a set of meals to a binary snapshot file.
+     * The file is named "meals.bin" and is replaced atomically.
+     * Ingredients only store the ID of their product and their quantity.
+     * An ingredient whose product is no longer part of the catalog keeps an embedded copy.
+     * @param meals the set of meals to save
+     * @param products the product catalog the ingredients refer to, the other products being embedded
+     * @return true if the snapshot was written
+     * @see BinarySnapshot
+     */
+    public static boolean saveMealSnapshot(Collection<Meal> meals, Collection<Product> products) {
+        return saveMealSnapshot(meals, usesProducts(products));
+    }
+
+    /**
+     * Saves a set of meals to a binary snapshot file, as saveMealSnapshot(Collection, Collection).
+     * @param meals the set of meals to save
+     * @param referenced tells whether the product of an ingredient is part of the catalog, and is saved by ID
+     * @return true if the snapshot was written
+     */
+    static boolean saveMealSnapshot(Collection<Meal> meals, Predicate<Ingredient> referenced) {
+        long start = ServiceMetrics.start();
+        return writeAtomically("meals.bin", file -> BinarySnapshot.writeMeals(file, meals, referenced),
+                ServiceOperation.SAVE_MEAL_SNAPSHOT, start);
+    }
+
+    /**
+     * Saves the products changed over the mapped catalog.
+     * The file is named "products-changes.bin" and is replaced atomically.
+     * It only holds the changes since "products.dat" was built, so its size does not depend on the size of the catalog.
+     * @param changed the products changed or added
+     * @param removed the IDs of the products removed
+     * @return true if the file was written
+     * @see #loadProductChanges(Consumer, IntConsumer)
+     */
+    static boolean saveProductChanges(Collection<Product> changed, int[] removed) {
+        long start = ServiceMetrics.start();
+        return writeAtomically("products-changes.bin", file -> BinarySnapshot.writeProductChanges(file, changed, removed),
+                ServiceOperation.SAVE_PRODUCT_CHANGES, start);
+    }
+
+    /**
+     * Loads the products changed over the mapped catalog.
+     * A missing file means no product changed.
+     * @param changed receives each changed or added product
+     * @param removed receives the ID of each removed product
+     * @return the number of changes loaded, or -1 if the file cannot be read,
+     *         the changes passed to the consumers before the failure having to be discarded in that case
+     */
+    int loadProductChanges(Consumer<Product> changed, IntConsumer removed) {
+        File file = dataFile("products-changes.bin");
         if (!file.exists()) {
-            return new ArrayList<>();
+            return 0;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            Gson gson = new Gson();
-            Product[] products = gson.fromJson(reader, Product[].class);
-            return List.of(products);
+        long start = ServiceMetrics.start();
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try {
+            int count = BinarySnapshot.readProductChanges(file, changed, removed);
+            event.complete(ServiceOperation.LOAD_PRODUCT_CHANGES, file, false);
+            ServiceMetrics.recordFile(ServiceOperation.LOAD_PRODUCT_CHANGES, start, file);
+            return count;
         } catch (IOException e) {
             e.printStackTrace();
+            event.complete(ServiceOperation.LOAD_PRODUCT_CHANGES, file, true);
+            ServiceMetrics.record(ServiceOperation.LOAD_PRODUCT_CHANGES, start, 0, true);
+            return -1;
         }
-        return new ArrayList<>();
     }
 
-    public static void saveMeals(Set<Meal> meals) {
-        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String json = gson.toJson(meals);
+    /**
+     * Deletes the mapped catalog, its name index, and the product changes laid over it,
+     * once "products.bin" holds every product, so that the next MAPPED startup rebuilds the catalog from it.
+     * The catalog is deleted before the changes: if the application stops in between,
+     * the changes are applied again over "products.bin", which already holds them.
+     * @return true if none of the files is left
+     */
+    static boolean deleteMappedCatalog() {
+        File names = dataFile("products-names.dat");
+        File catalog = dataFile("products.dat");
+        File changes = dataFile("products-changes.bin");
+        return (!names.exists() || names.delete()) && (!catalog.exists() || catalog.delete()) && (!changes.exists() || changes.delete());
+    }
 
-        try (FileWriter writer = new FileWriter("meals.json")) {
-            writer.write(json);
-        } catch (IOException e) {
+    /**
+     * Rewrites the whole product catalog: "products.bin", then "products.dat",
+     * and deletes the product changes, which both files now hold.
+     * Each file is replaced atomically, and the changes are deleted last,
+     * so an interruption leaves files that give the same products.
+     * A process mapping the previous "products.dat" keeps reading it until it maps the file again.
+     * @param products the products of the catalog
+     * @return true if the catalog was rewritten
+     */
+    static boolean compactProductCatalog(Collection<Product> products) {
+        long start = ServiceMetrics.start();
+        if (!saveProductSnapshot(products)) {
+            ServiceMetrics.record(ServiceOperation.COMPACT_PRODUCT_CATALOG, start, 0, true);
+            return false;
+        }
+        File file = dataFile("products.dat");
+        File changes = dataFile("products-changes.bin");
+        try {
+            MappedProductCatalog.Builder builder = new MappedProductCatalog.Builder(file);
+            boolean built = false;
+            try {
+                products.forEach(builder);
+                built = true;
+            } finally {
+                if (built) {
+                    builder.close();
+                } else {
+                    builder.discard();
+                }
+            }
+            if (changes.exists() && !changes.delete()) {
+                throw new IOException("Cannot delete " + changes);
+            }
+            ServiceMetrics.recordFile(ServiceOperation.COMPACT_PRODUCT_CATALOG, start, file);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
+            ServiceMetrics.record(ServiceOperation.COMPACT_PRODUCT_CATALOG, start, 0, true);
+            return false;
         }
     }
 
     /**
-     * Loads meals from a JSON file.
-     * The file is named "meals.json".
-     * The meals are deserialized using Gson.
-     * @return a list of meals
+     * Loads products from the binary snapshot file, streaming them one by one to the consumer.
+     * The file is named "products.bin".
+     * @param consumer receives each loaded product
+     * @return the number of products loaded, or -1 if there is no readable snapshot,
+     *         the products passed to the consumer before the failure having to be discarded in that case
      */
-    public List<Meal> loadMeals() {
-        File file = new File("meals.json");
+    public int loadProductSnapshot(Consumer<Product> consumer) {
+        File file = dataFile("products.bin");
         if (!file.exists()) {
-            return new ArrayList<>();
+            return -1;
         }
 
-        try (Reader reader = new FileReader(file)) {
-            Gson gson = new GsonBuilder().create();
-            Meal[] meals = gson.fromJson(reader, Meal[].class);
+        long start = ServiceMetrics.start();
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try {
+            int count = BinarySnapshot.readProducts(file, consumer);
+            event.complete(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, file, false);
+            ServiceMetrics.recordFile(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, start, file);
+            return count;
+        } catch (IOException e) {
+            e.printStackTrace();
+            event.complete(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, file, true);
+            ServiceMetrics.record(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, start, 0, true);
+            return -1;
+        }
+    }
 
-            if (meals == null) {
-                return new ArrayList<>();
-            }
+    /**
+     * Returns whether the catalog has been saved as binary snapshots.
+     * Once it has, the JSON files are no longer read.
+     * The mapped catalog only counts with a meal snapshot,
+     * since it is built from "products.json" before the first meal snapshot is written.
+     * @return true if the product snapshot file exists
+     */
+    boolean hasProductSnapshot() {
+        return dataFile("products.bin").exists() || dataFile("products.dat").exists() && dataFile("meals.bin").exists();
+    }
 
-            return List.of(meals);
+    /**
+     * Loads the products of the catalog from the binary snapshot, or from the mapped catalog when there is no snapshot,
+     * streaming them one by one to the consumer.
+     * The product changes saved in MAPPED catalog mode are not included.
+     * @param consumer receives each loaded product
+     * @return the number of products loaded, or -1 if the products cannot be read,
+     *         the products passed to the consumer before the failure having to be discarded in that case
+     */
+    int loadProductCatalog(Consumer<Product> consumer) {
+        if (dataFile("products.bin").exists()) {
+            return loadProductSnapshot(consumer);
+        }
+        File file = dataFile("products.dat");
+        long start = ServiceMetrics.start();
+        try {
+            Collection<Product> products = MappedProductCatalog.open(file).overlay(PersistentIntMap.empty(), PersistentIntMap.empty());
+            products.forEach(consumer);
+            ServiceMetrics.recordFile(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, start, file);
+            return products.size();
         } catch (IOException e) {
             e.printStackTrace();
-            return new ArrayList<>();
+            ServiceMetrics.record(ServiceOperation.LOAD_PRODUCT_SNAPSHOT, start, 0, true);
+            return -1;
         }
     }
 
     /**
-     * Saves a meal plan to a JSON file.
-     * The file is named "meal_plan.json".
-     * The meal plan is serialized using Gson.
-     * @param mealPlan the meal plan to save
+     * Opens the memory-mapped product catalog.
+     * The file is named "products.dat".
+     * It is only built here when it is missing, by streaming the product snapshot into it,
+     * or "products.json" without a snapshot, and is otherwise rebuilt by compactProductCatalog only:
+     * the products changed since it was built are in the product changes file.
+     * If the products cannot be loaded whole, no catalog file is written.
+     * @return the mapped catalog, or null if it cannot be built or mapped
+     * @see MappedProductCatalog
      */
-    public boolean exportMealPlanToMarkdown(MealPlan mealPlan, String filePath) {
-        if (mealPlan == null || mealPlan.getMeals() == null || mealPlan.getMeals().isEmpty()) {
-            return false;
+    MappedProductCatalog openProductCatalog() {
+        File file = dataFile("products.dat");
+        File snapshot = dataFile("products.bin");
+        try {
+            if (!file.exists()) {
+                MappedProductCatalog.Builder builder = new MappedProductCatalog.Builder(file);
+                boolean loaded = false;
+                try {
+                    loaded = (snapshot.exists() ? loadProductSnapshot(builder) : loadProducts(builder)) >= 0;
+                } finally {
+                    if (loaded) {
+                        builder.close();
+                    } else {
+                        builder.discard();
+                    }
+                }
+                if (!loaded) {
+                    throw new IOException("Cannot load the products of the mapped catalog: " + file);
+                }
+            }
+            return MappedProductCatalog.open(file);
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            return null;
         }
+    }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
+    /**
+     * Loads meals from the binary snapshot file, streaming them one by one to the consumer.
+     * The file is named "meals.bin".
+     * Ingredients are resolved against the given product lookup,
+     * so every meal shares the product instances of the catalog.
+     * Recipes kept in the recipe store are not read, they are loaded when a meal's recipe is read.
+     * @param productLookup returns the catalog product with the given ID, or null
+     * @param recipeLoader the loader of the stored recipes
+     * @param consumer receives each loaded meal
+     * @return the number of meals loaded, or -1 if there is no readable snapshot,
+     *         the meals passed to the consumer before the failure having to be discarded in that case
+     * @see #openRecipeStore()
+     */
+    public int loadMealSnapshot(IntFunction<Product> productLookup, RecipeLoader recipeLoader, Consumer<Meal> consumer) {
+        return loadMealSnapshot(IngredientResolver.of(productLookup), recipeLoader, consumer);
+    }
 
-            writer.println("# " + mealPlan.getName());
-            writer.println();
+    /**
+     * Loads meals from the binary snapshot file, as loadMealSnapshot(IntFunction, RecipeLoader, Consumer),
+     * the ingredients being created by the catalog.
+     * @param ingredients creates the ingredient using a catalog product, or returns null
+     * @param recipeLoader the loader of the stored recipes
+     * @param consumer receives each loaded meal
+     * @return the number of meals loaded, or -1 if there is no readable snapshot
+     */
+    int loadMealSnapshot(IngredientResolver ingredients, RecipeLoader recipeLoader, Consumer<Meal> consumer) {
+        File file = dataFile("meals.bin");
+        if (!file.exists()) {
+            return -1;
+        }
 
+        long start = ServiceMetrics.start();
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try {
+            int count = BinarySnapshot.readMeals(file, ingredients, recipeLoader, consumer);
+            event.complete(ServiceOperation.LOAD_MEAL_SNAPSHOT, file, false);
+            ServiceMetrics.recordFile(ServiceOperation.LOAD_MEAL_SNAPSHOT, start, file);
+            return count;
+        } catch (IOException e) {
+            e.printStackTrace();
+            event.complete(ServiceOperation.LOAD_MEAL_SNAPSHOT, file, true);
+            ServiceMetrics.record(ServiceOperation.LOAD_MEAL_SNAPSHOT, start, 0, true);
+            return -1;
+        }
+    }
 
-            writer.println("## Liste des repas");
-            writer.println();
+    /**
+     * Opens the store of the recipes referenced by the meal snapshot.
+     * The files are named "recipes.dat" and "recipes-N.dat", one per generation.
+     * @return the recipe store
+     * @see RecipeStore
+     */
+    RecipeStore openRecipeStore() {
+        return new RecipeStore(dataFile("recipes.dat"));
+    }
 
-            MealPlannerService service = MealPlannerService.getInstance();
-            double totalCost = 0.0;
+    /**
+     * Loads meals from a JSON file into a list.
+     * @param products the product catalog the ingredients refer to
+     * @return a list of meals
+     * @see #loadMeals(IntFunction, Consumer)
+     */
+    public List<Meal> loadMeals(Collection<Product> products) {
+        List<Meal> meals = new ArrayList<>();
+        loadMeals(indexProducts(products)::get, meals::add);
+        return meals;
+    }
 
-            for (Meal meal : mealPlan.getMeals()) {
-                double mealCost = service.calculateMealCost(meal);
-                totalCost += mealCost;
-                writer.printf("- %s (%.2f €)%n", meal.getName(), mealCost);
-            }
+    /**
+     * Loads meals from a JSON file, streaming them one by one to the consumer.
+     * The file is named "meals.json".
+     * The array is read with a JsonReader, and each meal is deserialized by Gson
+     * and handed to the consumer as soon as it is parsed, without building an intermediate array.
+     * Ingredients are resolved against the given product lookup,
+     * so every meal shares the product instances of the catalog.
+     * The old layout, where each ingredient embeds a full product, is still accepted.
+     * An ingredient referring to a product missing from the catalog fails the load, as a parse error does.
+     * @param productLookup returns the catalog product with the given ID, or null
+     * @param consumer receives each loaded meal
+     * @return the number of meals loaded, or -1 if the file cannot be read or parsed
+     */
+    public int loadMeals(IntFunction<Product> productLookup, Consumer<Meal> consumer) {
+        return loadMeals(IngredientResolver.of(productLookup), consumer);
+    }
 
-            writer.println();
-            writer.printf("**Coût total: %.2f €**%n", totalCost);
-            writer.println();
+    /**
+     * Loads meals from a JSON file, as loadMeals(IntFunction, Consumer), the ingredients being created by the catalog.
+     * @param ingredients creates the ingredient using a catalog product, or returns null
+     * @param consumer receives each loaded meal
+     * @return the number of meals loaded, or -1 if the file cannot be read or parsed
+     */
+    int loadMeals(IngredientResolver ingredients, Consumer<Meal> consumer) {
+        long start = ServiceMetrics.start();
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapter(Ingredient.class, new IngredientAdapter(ingredients, null))
+                .create();
+        return streamArray(dataFile("meals.json"), gson, Meal.class, consumer, ServiceOperation.LOAD_MEALS, start);
+    }
 
+    /**
+     * Reads a JSON array of objects from a file, deserializing one element at a time.
+     * A missing or empty file, or a null document, is read as an empty array.
+     * A file that cannot be read or parsed is reported as a failed load,
+     * the elements read before the error having already been passed to the consumer.
+     * @param file the file to read
+     * @param gson the Gson instance used to deserialize the elements
+     * @param type the type of the elements
+     * @param consumer receives each element
+     * @param operation the operation recorded in the metrics, with the size of the file
+     * @param start the start time of the operation
+     * @return the number of elements read, or -1 if the file cannot be read or parsed
+     */
+    private static <T> int streamArray(File file, Gson gson, Class<T> type, Consumer<T> consumer,
+                                       ServiceOperation operation, long start) {
+        if (!file.exists() || file.length() == 0) {
+            return 0;
+        }
 
-            writer.println("## Liste de courses");
-            writer.println();
+        int count = 0;
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+            if (reader.peek() == JsonToken.NULL) {
+                return 0;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                T element = gson.fromJson(reader, type);
+                if (element != null) {
+                    consumer.accept(element);
+                    count++;
+                }
+            }
+            reader.endArray();
+            event.complete(operation, file, false);
+            ServiceMetrics.recordFile(operation, start, file);
+            return count;
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace();
+            event.complete(operation, file, true);
+            ServiceMetrics.record(operation, start, 0, true);
+            return -1;
+        }
+    }
 
-            Map<Product, Double> shoppingList = service.generateShoppingList(mealPlan);
+    private static Map<Integer, Product> indexProducts(Collection<Product> products) {
+        Map<Integer, Product> productsById = new HashMap<>();
+        for (Product product : products) {
+            productsById.put(product.getId(), product);
+        }
+        return productsById;
+    }
 
+    /**
+     * Returns whether an ingredient uses one of the given products, the very instance with its ID.
+     */
+    private static Predicate<Ingredient> usesProducts(Collection<Product> products) {
+        Map<Integer, Product> productsById = indexProducts(products);
+        return ingredient -> productsById.get(ingredient.getProductId()) == ingredient.getProduct();
+    }
 
-            Map<String, Integer> productOccurrences = new HashMap<>();
-            Map<String, Product> productByIdentifier = new HashMap<>();
-            Map<String, Double> quantityByIdentifier = new HashMap<>();
+    /**
+     * Exports a meal plan to a markdown file.
+     * @param mealPlan the meal plan to export
+     * @param filePath the path of the markdown file
+     * @return true if the export succeeded, false if the plan is empty or the file cannot be written
+     */
+    public boolean exportMealPlanToMarkdown(MealPlan mealPlan, String filePath) {
+        if (mealPlan == null || mealPlan.getMeals() == null || mealPlan.getMeals().isEmpty()) {
+            return false;
+        }
 
-            for (Map.Entry<Product, Double> entry : shoppingList.entrySet()) {
-                Product product = entry.getKey();
-                Double quantity = entry.getValue();
+        long start = ServiceMetrics.start();
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        boolean written;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
+            writeMealPlanMarkdown(mealPlan, writer);
+            written = !writer.checkError();
+        } catch (IOException e) {
+            e.printStackTrace();
+            written = false;
+        }
+        event.complete(ServiceOperation.EXPORT_MARKDOWN, new File(filePath), !written);
+        if (written) {
+            ServiceMetrics.recordFile(ServiceOperation.EXPORT_MARKDOWN, start, new File(filePath));
+        } else {
+            ServiceMetrics.record(ServiceOperation.EXPORT_MARKDOWN, start, 0, true);
+        }
+        return written;
+    }
 
+    /**
+     * Writes a meal plan as markdown: its meals and their costs, its shopping list, and the recipes.
+     * @param mealPlan the meal plan to write, which must have meals
+     * @param writer the writer to write to
+     */
+    public void writeMealPlanMarkdown(MealPlan mealPlan, PrintWriter writer) {
+        writer.println("# " + mealPlan.getName());
+        writer.println();
 
-                String identifier = product.getId() + "-" + quantity;
 
+        writer.println("## Liste des repas");
+        writer.println();
 
-                productByIdentifier.put(identifier, product);
-                quantityByIdentifier.put(identifier, quantity);
+        MealPlannerService service = MealPlannerService.getInstance();
+        double totalCost = 0.0;
 
+        for (Meal meal : mealPlan.getMeals()) {
+            double mealCost = service.calculateMealCost(meal);
+            totalCost += mealCost;
+            writer.printf("- %s (%.2f €)%n", meal.getName(), mealCost);
+        }
 
-                productOccurrences.put(identifier, productOccurrences.getOrDefault(identifier, 0) + 1);
-            }
+        writer.println();
+        writer.printf("**Coût total: %.2f €**%n", totalCost);
+        writer.println();
 
 
-            for (String identifier : productOccurrences.keySet()) {
-                Product product = productByIdentifier.get(identifier);
-                Double quantity = quantityByIdentifier.get(identifier);
-                int occurrences = productOccurrences.get(identifier);
+        writer.println("## Liste de courses");
+        writer.println();
 
+        ShoppingList shoppingList = service.generateShoppingList(mealPlan);
+        for (ShoppingList.Item item : shoppingList.getItems()) {
+            Product product = item.getProduct();
+            writer.printf("- %s: %.2f %s (%d paquet(s), %.2f €)%n",
+                product.getName(), item.getQuantity(), product.getUnit(), item.getPackCount(), item.getTotalPrice());
+        }
 
-                double totalQuantity = quantity;
-                if (occurrences > 1) {
-                    totalQuantity = quantity * occurrences;
-                }
+        writer.println();
+        writer.printf("**Coût des courses: %.2f €**%n", shoppingList.getTotalPrice());
+        writer.println();
 
-                double packCount = Math.ceil(totalQuantity / product.getWeightPerPack());
-                double totalPrice = packCount * product.getPricePerPack();
 
-                if (occurrences > 1) {
-                    writer.printf("- %s: %.2f %s (x%d) (%.0f paquet(s), %.2f €)%n",
-                        product.getName(), totalQuantity, product.getUnit(), occurrences, packCount, totalPrice);
-                } else {
-                    writer.printf("- %s: %.2f %s (%.0f paquet(s), %.2f €)%n",
-                        product.getName(), quantity, product.getUnit(), packCount, totalPrice);
-                }
-            }
+        writer.println("## Recettes");
+        writer.println();
 
+        for (Meal meal : mealPlan.getMeals()) {
+            writer.println("### " + meal.getName());
             writer.println();
 
+            writer.println("**Ingrédients:**");
+            for (Ingredient ingredient : meal.getIngredients()) {
+                writer.printf("- %.2f %s de %s%n",
+                    ingredient.getQuantity(),
+                    ingredient.getProduct().getUnit(),
+                    ingredient.getProduct().getName());
+            }
 
-            writer.println("## Recettes");
             writer.println();
+            writer.println("**Préparation:**");
+            writer.println(meal.getRecipe());
+            writer.println();
+        }
+    }
+
+    /**
+     * Gson adapter storing an ingredient as a reference to its product.
+     * Writes {"productId": id, "quantity": q} when the product belongs to the catalog,
+     * and falls back to an embedded product otherwise.
+     * Reads both layouts, the catalog creating the ingredients from the product IDs.
+     */
+    static class IngredientAdapter implements JsonSerializer<Ingredient>, JsonDeserializer<Ingredient> {
+        private final IngredientResolver ingredients;
+        private final Predicate<Ingredient> referenced;
+
+        /**
+         * @param ingredients creates the ingredient using a catalog product, or returns null; null if the adapter only writes
+         * @param referenced tells whether the product of an ingredient is part of the catalog; null if the adapter only reads
+         */
+        IngredientAdapter(IngredientResolver ingredients, Predicate<Ingredient> referenced) {
+            this.ingredients = ingredients;
+            this.referenced = referenced;
+        }
+
+        @Override
+        public JsonElement serialize(Ingredient ingredient, Type type, JsonSerializationContext context) {
+            JsonObject json = new JsonObject();
+            if (referenced.test(ingredient)) {
+                json.addProperty("productId", ingredient.getProductId());
+            } else {
+                json.add("product", context.serialize(ingredient.getProduct(), Product.class));
+            }
+            json.addProperty("quantity", ingredient.getQuantity());
+            return json;
+        }
 
-            for (Meal meal : mealPlan.getMeals()) {
-                writer.println("### " + meal.getName());
-                writer.println();
+        @Override
+        public Ingredient deserialize(JsonElement element, Type type, JsonDeserializationContext context) {
+            JsonObject json = element.getAsJsonObject();
+            double quantity = json.get("quantity").getAsDouble();
 
-                writer.println("**Ingrédients:**");
-                for (Ingredient ingredient : meal.getIngredients()) {
-                    writer.printf("- %.2f %s de %s%n",
-                        ingredient.getQuantity(),
-                        ingredient.getProduct().getUnit(),
-                        ingredient.getProduct().getName());
+            if (json.has("productId")) {
+                int productId = json.get("productId").getAsInt();
+                Ingredient ingredient = ingredients.resolve(productId, quantity);
+                if (ingredient == null) {
+                    throw new JsonParseException("Unknown product ID in meals.json: " + productId);
                 }
-
-                writer.println();
-                writer.println("**Préparation:**");
-                writer.println(meal.getRecipe());
-                writer.println();
+                return ingredient;
             }
 
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+            Product embedded = context.deserialize(json.get("product"), Product.class);
+            Ingredient ingredient = ingredients.resolve(embedded.getId(), quantity);
+            return ingredient != null ? ingredient : new Ingredient(embedded, quantity);
         }
     }
 }
-
@@ -0,0 +1,62 @@
+package fr.oiha.mealplanner.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * FlightRecording starts a JDK Flight Recorder recording when the application starts,
+ * so that the GC, allocation and thread activity of a machine can be read against the meal planner events:
+ * MealPlanEvent, ShoppingListEvent, PlanCandidatesEvent and StorageEvent.
+ * The recording is enabled by the "mealplanner.recording" system property, naming the file it is written to
+ * when the application exits.
+ * It uses the JDK "profile" settings by default, or the settings named by the "mealplanner.recording.settings"
+ * system property, such as "default" for a lower overhead, and records every meal planner event whatever its duration.
+ */
+public final class FlightRecording {
+    /**
+     * System property naming the file of the recording.
+     */
+    public static final String RECORDING_PROPERTY = "mealplanner.recording";
+
+    /**
+     * System property naming the JDK settings of the recording.
+     */
+    public static final String SETTINGS_PROPERTY = "mealplanner.recording.settings";
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Starts the recording if the "mealplanner.recording" system property is set.
+     * The recording is written to its file when the JVM exits.
+     * @return the recording, or null if it is not enabled or cannot be started
+     */
+    public static Recording startFromSystemProperty() {
+        String file = System.getProperty(RECORDING_PROPERTY);
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration(System.getProperty(SETTINGS_PROPERTY, "profile")));
+            recording.setName("Meal Planner");
+            for (Class<? extends Event> eventClass : List.of(MealPlanEvent.class, ShoppingListEvent.class,
+                    PlanCandidatesEvent.class, StorageEvent.class)) {
+                recording.enable(eventClass).withoutThreshold();
+            }
+            recording.setToDisk(true);
+            recording.setDestination(Path.of(file));
+            recording.setDumpOnExit(true);
+            recording.start();
+            return recording;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
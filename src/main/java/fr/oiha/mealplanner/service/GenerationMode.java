@@ -0,0 +1,19 @@
+package fr.oiha.mealplanner.service;
+
+/**
+ * The strategies available to generate a meal plan.
+ * @see MealPlannerService#generateMealPlan(double, int, GenerationMode)
+ */
+public enum GenerationMode {
+    /**
+     * Picks meals in random order and keeps every meal that still fits in the budget.
+     * Fast, but may return fewer meals than requested.
+     */
+    RANDOM,
+
+    /**
+     * Searches for exactly the requested number of meals that use as much of the budget as possible,
+     * within a time budget. Falls back to RANDOM if no such combination is found in time.
+     */
+    OPTIMAL
+}
@@ -0,0 +1,34 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Product;
+
+import java.util.function.IntFunction;
+
+/**
+ * IngredientResolver creates the ingredients of loaded meals from the IDs of their products,
+ * so the catalog decides how an ingredient holds its product.
+ * In MAPPED catalog mode, the ingredients of unchanged products only keep the product ID.
+ */
+@FunctionalInterface
+interface IngredientResolver {
+    /**
+     * Creates an ingredient using the catalog product with the given ID.
+     * @param productId the ID of the product
+     * @param quantity the quantity of the ingredient
+     * @return the ingredient, or null if the catalog has no product with this ID
+     */
+    Ingredient resolve(int productId, double quantity);
+
+    /**
+     * Returns a resolver whose ingredients hold the products returned by a lookup.
+     * @param productLookup returns the catalog product with the given ID, or null
+     * @return the resolver
+     */
+    static IngredientResolver of(IntFunction<Product> productLookup) {
+        return (productId, quantity) -> {
+            Product product = productLookup.apply(productId);
+            return product == null ? null : new Ingredient(product, quantity);
+        };
+    }
+}
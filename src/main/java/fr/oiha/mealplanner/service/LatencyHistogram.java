@@ -0,0 +1,74 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations in nanoseconds in log-linear buckets, as HdrHistogram does.
+ * Durations below 32 ns have a bucket each, and every power of two above is split into 32 buckets,
+ * so a recorded duration is known within about 3% whatever its magnitude, from nanoseconds to hours,
+ * in a fixed array of (64 - 5) * 32 = 1888 counters.
+ * Recording is a single atomic increment, and never allocates nor locks.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a duration.
+     * @param nanos the duration in nanoseconds, negative durations being recorded as 0
+     */
+    void record(long nanos) {
+        counts.getAndIncrement(bucketOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * Returns the duration under which the given fraction of the recorded durations are,
+     * as the highest duration of its bucket.
+     * @param percentile the percentile, from 0 to 100
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKET_COUNT - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long subBucket = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,416 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.util.PersistentIntMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * MappedProductCatalog is a read-only product catalog memory-mapped from a fixed-width record file.
+ * The record of a product is found at an offset computed from its ID, so nothing is read on startup
+ * and a product is only decoded, into a new Product view, when it is looked up.
+ * Names and units are stored once in a string region at the end of the file.
+ * Each build writes a random stamp in the header, so the files derived from the catalog can tell which build they belong to.
+ * The file is built once from the product snapshot, and only rebuilt by an explicit compaction,
+ * which replaces it atomically and leaves the current mapping valid.
+ * Changes made afterwards are kept by each CatalogVersion as heap products over the catalog.
+ * Meals refer to unchanged catalog products through MappedIngredient, by ID only.
+ */
+class MappedProductCatalog {
+    private static final int MAGIC = 0x4D504C44; // "MPLD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int NO_STRING = -1;
+    private static final byte[] EMPTY_RECORD = new byte[RECORD_SIZE];
+
+    // Offsets of the fields in a record
+    private static final int PRESENT = 0;
+    private static final int NAME = 4;
+    private static final int UNIT = 8;
+    private static final int PRICE_PER_PACK = 16;
+    private static final int WEIGHT_PER_PACK = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int size;
+    private final int stringsOffset;
+    private final long stamp;
+
+    private MappedProductCatalog(MappedByteBuffer buffer, int slotCount, int size, int stringsOffset, long stamp) {
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.size = size;
+        this.stringsOffset = stringsOffset;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Maps a catalog file into memory.
+     * Only the header is read.
+     * @param file the catalog file
+     * @return the mapped catalog
+     * @throws IOException if the file cannot be mapped, or is not a catalog file of a supported version
+     */
+    static MappedProductCatalog open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Catalog file too large: " + file);
+            }
+            if (length < HEADER_SIZE) {
+                throw new IOException("Truncated catalog file: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a catalog file: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported catalog version " + version + ": " + file);
+            }
+            int slotCount = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            int stringsOffset = buffer.getInt(16);
+            if (slotCount < 0 || stringsOffset != HEADER_SIZE + (long) slotCount * RECORD_SIZE || stringsOffset > length) {
+                throw new IOException("Corrupted catalog file: " + file);
+            }
+            return new MappedProductCatalog(buffer, slotCount, size, stringsOffset, buffer.getLong(20));
+        }
+    }
+
+    /**
+     * Returns the number of record slots, one more than the highest product ID of the catalog.
+     * @return the number of slots
+     */
+    int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Returns the number of products in the catalog.
+     * @return the number of products
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the stamp of the build of the catalog file, 0 for a file built before stamps were written.
+     * @return the stamp
+     */
+    long stamp() {
+        return stamp;
+    }
+
+    boolean contains(int id) {
+        return id >= 0 && id < slotCount && buffer.getInt(recordOffset(id) + PRESENT) != 0;
+    }
+
+    /**
+     * Decodes the product with the given ID.
+     * Every call returns a new Product, changing it does not change the catalog.
+     * @param id the ID of the product
+     * @return the product, or null if the catalog has no product with this ID
+     */
+    Product get(int id) {
+        if (!contains(id)) {
+            return null;
+        }
+        int record = recordOffset(id);
+        return new Product(id,
+                string(buffer.getInt(record + NAME)),
+                buffer.getDouble(record + PRICE_PER_PACK),
+                buffer.getDouble(record + WEIGHT_PER_PACK),
+                string(buffer.getInt(record + UNIT)));
+    }
+
+    /**
+     * Returns an ingredient referring to a catalog product by ID.
+     * @param id the ID of the product, which must be in the catalog
+     * @param quantity the quantity of the ingredient
+     * @return the ingredient
+     */
+    MappedIngredient ingredient(int id, double quantity) {
+        return new MappedIngredient(this, id, quantity);
+    }
+
+    private static int recordOffset(int id) {
+        return HEADER_SIZE + id * RECORD_SIZE;
+    }
+
+    private String string(int reference) {
+        if (reference == NO_STRING) {
+            return null;
+        }
+        int offset = stringsOffset + reference;
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a view of the catalog with heap products laid over it.
+     * The view decodes the products of the catalog while it is iterated, in ID order,
+     * followed by the heap products added after the catalog was built.
+     * @param overlay the heap products, replacing the catalog products with the same ID
+     * @param removed the catalog products that were removed, by ID
+     * @return a read-only collection of the products
+     */
+    Collection<Product> overlay(PersistentIntMap<Product> overlay, PersistentIntMap<Product> removed) {
+        List<Product> added = new ArrayList<>();
+        int[] hidden = {0};
+        overlay.forEachValue(p -> {
+            if (p.getId() >= slotCount) {
+                added.add(p);
+            } else if (contains(p.getId())) {
+                hidden[0]++;
+            }
+        });
+        removed.forEachValue(p -> {
+            if (contains(p.getId()) && !overlay.containsKey(p.getId())) {
+                hidden[0]++;
+            }
+        });
+        added.sort(Comparator.comparingInt(Product::getId));
+        int overlaySize = size - hidden[0] + overlay.size();
+
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Product> iterator() {
+                return new Iterator<>() {
+                    private int nextId = -1;
+                    private int addedIndex;
+                    private Product next = advance();
+
+                    private Product advance() {
+                        while (++nextId < slotCount) {
+                            Product p = overlay.get(nextId);
+                            if (p != null) {
+                                return p;
+                            }
+                            if (!removed.containsKey(nextId) && MappedProductCatalog.this.contains(nextId)) {
+                                return get(nextId);
+                            }
+                        }
+                        return addedIndex < added.size() ? added.get(addedIndex++) : null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Product next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Product p = next;
+                        next = advance();
+                        return p;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return overlaySize;
+            }
+        };
+    }
+
+    /**
+     * MappedIngredient is an ingredient whose product is read from the mapped catalog each time it is needed.
+     * The catalog file is never written while mapped, so the ingredient always reads the same product,
+     * and a meal using unchanged products keeps no Product in memory.
+     */
+    static final class MappedIngredient extends Ingredient {
+        private final MappedProductCatalog catalog;
+        private final int productId;
+
+        private MappedIngredient(MappedProductCatalog catalog, int productId, double quantity) {
+            super(null, quantity);
+            this.catalog = catalog;
+            this.productId = productId;
+        }
+
+        /**
+         * Decodes the product of the ingredient, into a new Product view.
+         * @return the product
+         */
+        @Override
+        public Product getProduct() {
+            return catalog.get(productId);
+        }
+
+        @Override
+        public int getProductId() {
+            return productId;
+        }
+
+        MappedProductCatalog getCatalog() {
+            return catalog;
+        }
+
+        /**
+         * Calculates the cost of the ingredient from the numeric fields of the record, without decoding the strings.
+         * @return the cost of the ingredient
+         */
+        double getCost() {
+            int record = recordOffset(productId);
+            return (getQuantity() / catalog.buffer.getDouble(record + WEIGHT_PER_PACK)) * catalog.buffer.getDouble(record + PRICE_PER_PACK);
+        }
+    }
+
+    /**
+     * Builds a catalog file from products streamed to it.
+     * Only the numeric fields are kept in memory while building, in arrays indexed by ID.
+     * The strings are written to a temporary file as they arrive, units being stored once.
+     * The catalog file is replaced atomically when the builder is closed.
+     */
+    static class Builder implements Consumer<Product>, Closeable {
+        private final File target;
+        private final File strings;
+        private final DataOutputStream stringsOut;
+        private final Map<String, Integer> units = new HashMap<>();
+        private int stringsSize;
+        private int[] names = new int[1024];
+        private int[] unitReferences = new int[1024];
+        private double[] pricesPerPack = new double[1024];
+        private double[] weightsPerPack = new double[1024];
+        private final BitSet present = new BitSet();
+        private int slotCount;
+
+        Builder(File target) throws IOException {
+            this.target = target;
+            this.strings = new File(target.getPath() + ".strings.tmp");
+            this.stringsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(strings), 1 << 16));
+        }
+
+        @Override
+        public void accept(Product product) {
+            int id = product.getId();
+            if (id >= names.length) {
+                int capacity = Math.max(names.length * 2, id + 1);
+                names = Arrays.copyOf(names, capacity);
+                unitReferences = Arrays.copyOf(unitReferences, capacity);
+                pricesPerPack = Arrays.copyOf(pricesPerPack, capacity);
+                weightsPerPack = Arrays.copyOf(weightsPerPack, capacity);
+            }
+            try {
+                names[id] = writeString(product.getName());
+                Integer unit = units.get(product.getUnit());
+                if (unit == null) {
+                    unit = writeString(product.getUnit());
+                    units.put(product.getUnit(), unit);
+                }
+                unitReferences[id] = unit;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pricesPerPack[id] = product.getPricePerPack();
+            weightsPerPack[id] = product.getWeightPerPack();
+            present.set(id);
+            slotCount = Math.max(slotCount, id + 1);
+        }
+
+        private int writeString(String s) throws IOException {
+            if (s == null) {
+                return NO_STRING;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            int reference = stringsSize;
+            stringsOut.writeInt(bytes.length);
+            stringsOut.write(bytes);
+            stringsSize += 4 + bytes.length;
+            return reference;
+        }
+
+        /**
+         * Abandons the build, leaving the catalog file unchanged.
+         * @throws IOException if the temporary strings file cannot be closed
+         */
+        void discard() throws IOException {
+            stringsOut.close();
+            strings.delete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            stringsOut.close();
+            long stringsOffset = HEADER_SIZE + (long) slotCount * RECORD_SIZE;
+            if (stringsOffset + stringsSize > Integer.MAX_VALUE) {
+                strings.delete();
+                throw new IOException("Catalog too large to be mapped: " + target);
+            }
+
+            File temporary = new File(target.getPath() + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(present.cardinality()).putInt((int) stringsOffset)
+                        .putLong(ThreadLocalRandom.current().nextLong() | 1);
+                writeFully(out, header.clear());
+
+                ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 2048);
+                for (int id = 0; id < slotCount; id++) {
+                    if (!records.hasRemaining()) {
+                        writeFully(out, records.flip());
+                        records.clear();
+                    }
+                    int record = records.position();
+                    if (present.get(id)) {
+                        records.putInt(record + PRESENT, 1);
+                        records.putInt(record + NAME, names[id]);
+                        records.putInt(record + UNIT, unitReferences[id]);
+                        records.putDouble(record + PRICE_PER_PACK, pricesPerPack[id]);
+                        records.putDouble(record + WEIGHT_PER_PACK, weightsPerPack[id]);
+                    } else {
+                        records.put(record, EMPTY_RECORD);
+                    }
+                    records.position(record + RECORD_SIZE);
+                }
+                writeFully(out, records.flip());
+
+                try (FileChannel in = FileChannel.open(strings.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < stringsSize) {
+                        position += in.transferTo(position, stringsSize - position, out);
+                    }
+                }
+            } finally {
+                strings.delete();
+            }
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+}
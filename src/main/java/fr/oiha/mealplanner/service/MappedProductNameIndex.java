@@ -0,0 +1,349 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.util.IntIntMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * MappedProductNameIndex is the name index of a mapped product catalog, memory-mapped from a file derived from it,
+ * so the names of the products are not held in memory in MAPPED catalog mode.
+ * The file holds the normalized names, the IDs sorted by name, and the sorted ID lists of every trigram,
+ * the same structures ProductNameIndex keeps on the heap, and is searched the same way.
+ * It records the stamp of the catalog file it was built from, and is built again when the catalog file was.
+ * Building it holds the normalized names in memory, once, on the thread building the index.
+ * @see ProductNameIndex
+ */
+class MappedProductNameIndex {
+    private static final int MAGIC = 0x4D504E49; // "MPNI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int NO_NAME = -1;
+    private static final int TRIGRAM_SIZE = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int count;
+    private final int trigramCount;
+    private final int sortedOffset;
+    private final int trigramsOffset;
+    private final int postingsOffset;
+    private final int namesOffset;
+
+    private MappedProductNameIndex(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        slotCount = buffer.getInt(16);
+        count = buffer.getInt(20);
+        trigramCount = buffer.getInt(24);
+        sortedOffset = HEADER_SIZE + slotCount * 4;
+        trigramsOffset = sortedOffset + count * 4;
+        postingsOffset = trigramsOffset + trigramCount * TRIGRAM_SIZE;
+        namesOffset = postingsOffset + buffer.getInt(28) * 4;
+    }
+
+    /**
+     * Maps the name index of a catalog, building the index file first if it is missing or was built from another catalog file.
+     * @param file the index file
+     * @param catalog the mapped catalog
+     * @return the mapped index
+     * @throws IOException if the index file cannot be built or mapped
+     */
+    static MappedProductNameIndex open(File file, MappedProductCatalog catalog) throws IOException {
+        MappedProductNameIndex index = file.exists() ? map(file) : null;
+        if (index == null || index.buffer.getLong(8) != catalog.stamp() || index.slotCount != catalog.slotCount()) {
+            build(file, catalog);
+            index = map(file);
+        }
+        return index;
+    }
+
+    private static MappedProductNameIndex map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            return new MappedProductNameIndex(buffer);
+        }
+    }
+
+    /**
+     * Writes the index file of a catalog.
+     * The trigrams are counted in a first pass over the names, so the ID lists are written in place in the mapped file.
+     * The file is written aside and moved in place atomically.
+     */
+    private static void build(File file, MappedProductCatalog catalog) throws IOException {
+        int slotCount = catalog.slotCount();
+        String[] names = new String[slotCount];
+        IntIntMap trigramSizes = new IntIntMap();
+        int[] trigrams = new int[1024];
+        int trigramCount = 0;
+        long postingsSize = 0;
+        long namesSize = 0;
+        int count = 0;
+        for (int id = 0; id < slotCount; id++) {
+            Product product = catalog.get(id);
+            if (product == null) {
+                continue;
+            }
+            names[id] = ProductNameIndex.normalize(product.getName());
+            namesSize += 4 + names[id].getBytes(StandardCharsets.UTF_8).length;
+            count++;
+            for (int trigram : distinctTrigrams(names[id])) {
+                int size = trigramSizes.getOrDefault(trigram, 0);
+                if (size == 0) {
+                    if (trigramCount == trigrams.length) {
+                        trigrams = Arrays.copyOf(trigrams, trigramCount * 2);
+                    }
+                    trigrams[trigramCount++] = trigram;
+                }
+                trigramSizes.put(trigram, size + 1);
+                postingsSize++;
+            }
+        }
+        trigrams = Arrays.copyOf(trigrams, trigramCount);
+        Arrays.sort(trigrams);
+
+        long length = HEADER_SIZE + 4L * slotCount + 4L * count + (long) TRIGRAM_SIZE * trigramCount + 4 * postingsSize + namesSize;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Product name index too large to be mapped: " + file);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            out.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, catalog.stamp())
+                    .putInt(16, slotCount).putInt(20, count).putInt(24, trigramCount).putInt(28, (int) postingsSize);
+            int sortedOffset = HEADER_SIZE + slotCount * 4;
+            int trigramsOffset = sortedOffset + count * 4;
+            int postingsOffset = trigramsOffset + trigramCount * TRIGRAM_SIZE;
+            int namesOffset = postingsOffset + (int) postingsSize * 4;
+
+            // Names, in ID order
+            Integer[] sorted = new Integer[count];
+            int name = 0;
+            int sortedCount = 0;
+            for (int id = 0; id < slotCount; id++) {
+                if (names[id] == null) {
+                    out.putInt(HEADER_SIZE + id * 4, NO_NAME);
+                    continue;
+                }
+                byte[] bytes = names[id].getBytes(StandardCharsets.UTF_8);
+                out.putInt(HEADER_SIZE + id * 4, name);
+                out.putInt(namesOffset + name, bytes.length).put(namesOffset + name + 4, bytes);
+                name += 4 + bytes.length;
+                sorted[sortedCount++] = id;
+            }
+
+            // IDs by name, the sort being stable keeps the IDs of a name in ID order
+            Arrays.sort(sorted, (a, b) -> names[a].compareTo(names[b]));
+            for (int i = 0; i < count; i++) {
+                out.putInt(sortedOffset + i * 4, sorted[i]);
+            }
+
+            // ID lists of the trigrams, filled in ID order
+            IntIntMap nextPosting = new IntIntMap(trigramCount);
+            int start = 0;
+            for (int i = 0; i < trigramCount; i++) {
+                int size = trigramSizes.getOrDefault(trigrams[i], 0);
+                out.putInt(trigramsOffset + i * TRIGRAM_SIZE, trigrams[i])
+                        .putInt(trigramsOffset + i * TRIGRAM_SIZE + 4, start)
+                        .putInt(trigramsOffset + i * TRIGRAM_SIZE + 8, size);
+                nextPosting.put(trigrams[i], start);
+                start += size;
+            }
+            for (int id = 0; id < slotCount; id++) {
+                if (names[id] == null) {
+                    continue;
+                }
+                for (int trigram : distinctTrigrams(names[id])) {
+                    int posting = nextPosting.getOrDefault(trigram, 0);
+                    out.putInt(postingsOffset + posting * 4, id);
+                    nextPosting.put(trigram, posting + 1);
+                }
+            }
+            out.force();
+        } catch (IOException | RuntimeException e) {
+            temporary.delete();
+            throw e;
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] distinctTrigrams(String name) {
+        String padded = " " + name;
+        int[] trigrams = new int[Math.max(padded.length() - 2, 0)];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ProductNameIndex.trigram(padded, i);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Returns whether the catalog file of the index has a product with the given ID.
+     * @param id the ID of the product
+     * @return true if the product is indexed
+     */
+    boolean contains(int id) {
+        return id >= 0 && id < slotCount && buffer.getInt(HEADER_SIZE + id * 4) != NO_NAME;
+    }
+
+    /**
+     * Returns the normalized name of an indexed product.
+     * @param id the ID of the product, which must be indexed
+     * @return the normalized name
+     */
+    String name(int id) {
+        int offset = namesOffset + buffer.getInt(HEADER_SIZE + id * 4);
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the first indexed IDs, in ID order.
+     * @param accepted whether an ID may be returned
+     * @param limit the maximum number of IDs
+     * @return the IDs
+     */
+    int[] ids(IntPredicate accepted, int limit) {
+        ProductNameIndex.Matches matches = new ProductNameIndex.Matches(limit);
+        for (int id = 0; id < slotCount && !matches.isFull(); id++) {
+            if (contains(id) && accepted.test(id)) {
+                matches.add(id);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Returns the IDs of the products whose name starts with a prefix, in name order.
+     * @param prefix the normalized prefix
+     * @param accepted whether an ID may be returned
+     * @param limit the maximum number of IDs
+     * @return the IDs
+     */
+    int[] startingWith(String prefix, IntPredicate accepted, int limit) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (name(sorted(middle)).compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        ProductNameIndex.Matches matches = new ProductNameIndex.Matches(limit);
+        for (int i = low; i < count && !matches.isFull(); i++) {
+            int id = sorted(i);
+            if (!name(id).startsWith(prefix)) {
+                break;
+            }
+            if (accepted.test(id)) {
+                matches.add(id);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Returns the IDs of the products whose padded name contains a pattern of at least three characters
+     * but does not start with the query, in ID order.
+     * @param pattern the normalized pattern, preceded by a space to match the start of a word
+     * @param query the normalized query
+     * @param accepted whether an ID may be returned
+     * @param limit the maximum number of IDs
+     * @return the IDs
+     */
+    int[] containing(String pattern, String query, IntPredicate accepted, int limit) {
+        ProductNameIndex.Matches matches = new ProductNameIndex.Matches(limit);
+        int[][] lists = new int[pattern.length() - 2][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = trigramList(ProductNameIndex.trigram(pattern, i));
+            if (lists[i] == null) {
+                return matches.toArray();
+            }
+        }
+        // Each list is {start, size}
+        Arrays.sort(lists, (a, b) -> Integer.compare(a[1], b[1]));
+        int[] smallest = lists[0];
+        for (int i = 0; i < smallest[1] && !matches.isFull(); i++) {
+            int id = buffer.getInt(postingsOffset + (smallest[0] + i) * 4);
+            if (containsAll(lists, id) && accepted.test(id)) {
+                String name = name(id);
+                if ((" " + name).contains(pattern) && !name.startsWith(query)) {
+                    matches.add(id);
+                }
+            }
+        }
+        return matches.toArray();
+    }
+
+    private int sorted(int index) {
+        return buffer.getInt(sortedOffset + index * 4);
+    }
+
+    private int[] trigramList(int trigram) {
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int key = buffer.getInt(trigramsOffset + middle * TRIGRAM_SIZE);
+            if (key < trigram) {
+                low = middle + 1;
+            } else if (key > trigram) {
+                high = middle - 1;
+            } else {
+                return new int[] {
+                        buffer.getInt(trigramsOffset + middle * TRIGRAM_SIZE + 4),
+                        buffer.getInt(trigramsOffset + middle * TRIGRAM_SIZE + 8)};
+            }
+        }
+        return null;
+    }
+
+    private boolean containsAll(int[][] lists, int id) {
+        for (int i = 1; i < lists.length; i++) {
+            int low = lists[i][0];
+            int high = lists[i][0] + lists[i][1] - 1;
+            boolean found = false;
+            while (low <= high && !found) {
+                int middle = (low + high) >>> 1;
+                int value = buffer.getInt(postingsOffset + middle * 4);
+                if (value < id) {
+                    low = middle + 1;
+                } else if (value > id) {
+                    high = middle - 1;
+                } else {
+                    found = true;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package fr.oiha.mealplanner.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the generation of a meal plan.
+ */
+@Name("fr.oiha.mealplanner.MealPlan")
+@Label("Meal Plan Generation")
+@Category({"Meal Planner", "Service"})
+@Description("Selection of the meals of a meal plan")
+@StackTrace(false)
+class MealPlanEvent extends Event {
+    @Label("Mode")
+    String mode;
+
+    @Label("Maximum Budget")
+    double maxBudget;
+
+    @Label("Requested Meals")
+    int requestedMeals;
+
+    @Label("Candidates")
+    @Description("Number of meals of the catalog version the plan is selected from")
+    int candidates;
+
+    @Label("Candidates Scanned")
+    @Description("Candidates drawn in RANDOM mode, nodes explored in OPTIMAL mode")
+    long candidatesScanned;
+
+    @Label("Selected Meals")
+    int selectedMeals;
+
+    @Label("Seed")
+    long seed;
+}
@@ -0,0 +1,230 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.util.IntIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * MealPlanGenerator selects the meals of a meal plan from a fixed set of candidates.
+ * The candidates and their costs are precomputed once and sorted by decreasing cost,
+ * so a generator can be reused for every plan until the catalog changes.
+ * A generator is immutable and can be shared by several threads.
+ * It supports a randomized greedy selection and a branch-and-bound search
+ * for exactly N meals that make the best use of the budget.
+ */
+class MealPlanGenerator {
+    private static final double EPSILON = 1e-9;
+    // A plan within half a cent of the budget cannot be meaningfully improved
+    private static final double BUDGET_TOLERANCE = 0.005;
+    private static final int NODES_BETWEEN_CLOCK_CHECKS = 4096;
+
+    private final Meal[] meals;
+    private final double[] costs;
+    // Sum of the i most expensive costs, prefixSums[0] being 0
+    private final double[] prefixSums;
+
+    /**
+     * Creates a generator for the given candidates.
+     * @param candidates the meals to choose from
+     * @param costs the cost of each candidate, in the same order
+     */
+    MealPlanGenerator(Meal[] candidates, double[] costs) {
+        Integer[] order = new Integer[candidates.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Ties are ordered by meal ID, so the same catalog always gives the same candidate order
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> costs[i]).reversed()
+                .thenComparingInt(i -> candidates[i].getId()));
+
+        this.meals = new Meal[candidates.length];
+        this.costs = new double[candidates.length];
+        this.prefixSums = new double[candidates.length + 1];
+        for (int i = 0; i < order.length; i++) {
+            this.meals[i] = candidates[order[i]];
+            this.costs[i] = costs[order[i]];
+            this.prefixSums[i + 1] = prefixSums[i] + this.costs[i];
+        }
+    }
+
+    int size() {
+        return meals.length;
+    }
+
+    /**
+     * Picks meals in random order, keeping every meal that still fits in the budget,
+     * until the requested number of meals is reached.
+     * The random order is a partial Fisher-Yates shuffle that only draws the candidates it looks at:
+     * the swapped positions are kept in a sparse map instead of a permutation of every candidate,
+     * so a plan costs O(drawn candidates) instead of O(all candidates).
+     * The drawing stops as soon as even the cheapest candidate no longer fits in the budget.
+     * With the same random sequence and the same catalog, the same meals are selected.
+     * @param maxBudget the maximum total cost
+     * @param mealCount the number of meals wanted
+     * @param random the source of randomness
+     * @param event the flight recorder event receiving the number of drawn candidates
+     * @return the selected meals, possibly fewer than requested
+     */
+    List<Meal> generateRandom(double maxBudget, int mealCount, RandomGenerator random, MealPlanEvent event) {
+        List<Meal> selectedMeals = new ArrayList<>(Math.min(mealCount, meals.length));
+        if (meals.length == 0) {
+            return selectedMeals;
+        }
+
+        double cheapestCost = costs[meals.length - 1];
+        IntIntMap swapped = new IntIntMap(Math.min(mealCount, meals.length) * 2);
+        double totalCost = 0.0;
+        int drawn = 0;
+        for (; drawn < meals.length; drawn++) {
+            if (selectedMeals.size() >= mealCount || totalCost + cheapestCost > maxBudget) {
+                break;
+            }
+            int position = drawn + random.nextInt(meals.length - drawn);
+            int index = swapped.getOrDefault(position, position);
+            swapped.put(position, swapped.getOrDefault(drawn, drawn));
+
+            if (totalCost + costs[index] <= maxBudget) {
+                selectedMeals.add(meals[index]);
+                totalCost += costs[index];
+            }
+        }
+        event.candidatesScanned += drawn;
+        return selectedMeals;
+    }
+
+    /**
+     * Searches for exactly mealCount meals whose total cost is as close as possible to maxBudget
+     * without exceeding it.
+     * The search is a depth-first branch and bound over the candidates sorted by decreasing cost:
+     * a branch is cut when even its cheapest completion exceeds the budget,
+     * or when its most expensive completion cannot beat the best plan found so far.
+     * When the search runs out of time, the best plan found so far is returned.
+     * @param maxBudget the maximum total cost
+     * @param mealCount the number of meals wanted, capped to the number of candidates
+     * @param timeBudgetNanos the maximum duration of the search
+     * @param event the flight recorder event receiving the number of explored nodes
+     * @return the selected meals, or null if no combination was found
+     */
+    List<Meal> generateOptimal(double maxBudget, int mealCount, long timeBudgetNanos, MealPlanEvent event) {
+        int count = Math.min(mealCount, meals.length);
+        if (count <= 0 || cheapestSum(0, count) > maxBudget + EPSILON) {
+            return null;
+        }
+
+        Search search = new Search(maxBudget, count, System.nanoTime() + timeBudgetNanos);
+        search.explore(0, count, 0.0, 0);
+        event.candidatesScanned += search.nodes;
+        if (search.bestSelection == null) {
+            return null;
+        }
+
+        List<Meal> selectedMeals = new ArrayList<>(count);
+        for (int index : search.bestSelection) {
+            selectedMeals.add(meals[index]);
+        }
+        return selectedMeals;
+    }
+
+    // Sum of the costs of the 'count' most expensive candidates starting at 'from'
+    private double expensiveSum(int from, int count) {
+        return prefixSums[from + count] - prefixSums[from];
+    }
+
+    // Sum of the costs of the 'count' cheapest candidates, ignoring the first 'from' ones
+    private double cheapestSum(int from, int count) {
+        int start = Math.max(from, meals.length - count);
+        return prefixSums[meals.length] - prefixSums[start];
+    }
+
+    // First index at or after 'from' whose cost is at most 'limit'
+    private int firstAffordable(int from, double limit) {
+        int low = from;
+        int high = meals.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (costs[middle] > limit + EPSILON) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * State of one branch-and-bound search.
+     */
+    private class Search {
+        private final double maxBudget;
+        private final long deadline;
+        private final int[] selection;
+        private int[] bestSelection;
+        private double bestCost = -1.0;
+        private long nodes;
+        private boolean timedOut;
+
+        Search(double maxBudget, int count, long deadline) {
+            this.maxBudget = maxBudget;
+            this.deadline = deadline;
+            this.selection = new int[count];
+        }
+
+        /**
+         * Completes the selection with 'remaining' candidates taken at or after 'from'.
+         * @param from the first candidate that may be selected
+         * @param remaining the number of candidates still to select
+         * @param cost the cost of the candidates already selected
+         * @param depth the number of candidates already selected
+         */
+        void explore(int from, int remaining, double cost, int depth) {
+            if (timedOut || ++nodes % NODES_BETWEEN_CLOCK_CHECKS == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                return;
+            }
+
+            // The most expensive completion fits: nothing else in this branch can do better
+            double bestCompletion = cost + expensiveSum(from, remaining);
+            if (bestCompletion <= maxBudget + EPSILON) {
+                if (bestCompletion > bestCost) {
+                    for (int i = 0; i < remaining; i++) {
+                        selection[depth + i] = from + i;
+                    }
+                    record(bestCompletion);
+                }
+                return;
+            }
+
+            double cheapestTail = cheapestSum(from + 1, remaining - 1);
+            int last = meals.length - remaining;
+            int first = firstAffordable(from, maxBudget - cost - cheapestTail);
+            for (int next = first; next <= last; next++) {
+                // Same cost as the previous sibling: the subtree would only repeat the same sums
+                if (next > first && costs[next] == costs[next - 1]) {
+                    continue;
+                }
+                if (cost + expensiveSum(next, remaining) <= bestCost + EPSILON) {
+                    return;
+                }
+                selection[depth] = next;
+                if (remaining == 1) {
+                    record(cost + costs[next]);
+                    return;
+                }
+                explore(next + 1, remaining - 1, cost + costs[next], depth + 1);
+                if (timedOut || bestCost >= maxBudget - BUDGET_TOLERANCE) {
+                    return;
+                }
+            }
+        }
+
+        private void record(double cost) {
+            bestCost = cost;
+            bestSelection = selection.clone();
+        }
+    }
+}
@@ -6,67 +6,170 @@ import fr.oiha.mealplanner.model.Ingredient;
 import fr.oiha.mealplanner.model.Meal;
 import fr.oiha.mealplanner.model.MealPlan;
 import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.model.ShoppingList;
+import fr.oiha.mealplanner.util.IntDoubleMap;
+import fr.oiha.mealplanner.util.IntObjectMap;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * MealPlannerService is a singleton class that manages the meal planning process.
  * It handles the addition, modification, and removal of products and meals.
  * It also generates meal plans and shopping lists based on user preferences.
- * It uses a DataStorageService to save and load data.
+ * It uses a DataStorageService to save and load data,
+ * and a ChangeJournal to persist single changes in JOURNAL mode.
+ * Every write to disk runs on the background thread of a SaveScheduler,
+ * so the changes made by the user interface never wait for the disk.
+ * It is thread-safe: the catalog is published as immutable CatalogVersions through an atomic reference.
+ * Readers take the current version without locking, so plan generation and exports run on worker threads
+ * and see the same catalog from start to end while the user edits it.
+ * Changes are serialized by a lock, and each change publishes a new version sharing its unchanged parts
+ * with the previous one.
+ * Read methods return read-only views of the current version, which are snapshots since it never changes.
  */
 public class MealPlannerService {
-    private static MealPlannerService instance;
-    private Set<Product> products;
-    private Set<Meal> meals;
+    /**
+     * Maximum duration of the search of an OPTIMAL meal plan.
+     */
+    public static final long OPTIMAL_TIME_BUDGET_MILLIS = 200;
+
+    /**
+     * Number of journal records after which the snapshot files are rewritten and the journal cleared.
+     */
+    public static final int JOURNAL_COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * Delay during which snapshot writes are coalesced into a single write.
+     */
+    public static final long SAVE_COALESCE_WINDOW_MILLIS = 500;
+
+    private final AtomicReference<CatalogVersion> catalog;
+    private final ProductUsageIndex productUsage = new ProductUsageIndex();
+    private final RecipeStore recipeStore;
     private int productCounter = 0;
     private int mealCounter = 0;
-    private int mealPlanCounter = 0;
+    private final AtomicInteger mealPlanCounter = new AtomicInteger();
     private DataStorageService storageService;
-    private Map<Product, Double> shoppingList;
+    private final PersistenceMode persistenceMode;
+    private final SaveScheduler saveScheduler;
+    private final ChangeJournal journal;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<CatalogChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Built in the background after startup, then kept up to date by the writer
+    private final ProductNameIndex productNames = new ProductNameIndex();
+    // Version whose products are those of the product snapshot on disk
+    private volatile CatalogVersion savedProducts;
 
     /**
      * Private constructor for the MealPlannerService.
-     * Initializes the product and meal sets.
-     * Loads products and meals from the storage service.
+     * Builds the first catalog version.
+     * Streams products and meals from the binary snapshots straight into the version,
+     * the ingredients of the meals sharing the loaded product instances.
+     * Without snapshots, the catalog is imported from the JSON files, and the snapshots are written right away.
+     * A JSON file that fails to load is reported, and nothing is written at startup,
+     * so the JSON files stay the source of the catalog until they are fixed.
+     * Once the snapshots exist, the JSON files are no longer read:
+     * a snapshot that cannot be loaded whole stops the startup with an IllegalStateException,
+     * leaving every file unchanged, rather than loading a stale catalog over a partial one.
+     * In MAPPED catalog mode, products are not loaded but mapped from the catalog file,
+     * the product changes saved since the file was built are laid over it,
+     * and the meals refer to the unchanged products by ID, without decoding them.
+     * Recipes are not loaded, meals read them from the recipe store when needed.
+     * Then replays the changes of the journal written since the last snapshot.
      * Sets the product and meal counters based on loaded data.
+     * Pending writes are flushed when the JVM shuts down.
      */
     private MealPlannerService() {
         storageService = new DataStorageService();
-        List<Product> loadedProducts = storageService.loadProducts();
-        if (loadedProducts != null) {
-            products = new HashSet<>(loadedProducts);
-            for (Product p : loadedProducts) {
-                if (p.getId() >= productCounter) {
-                    productCounter = p.getId() + 1;
-                }
+        boolean imported = false;
+        boolean importFailed = false;
+        boolean snapshot = storageService.hasProductSnapshot();
+        MappedProductCatalog mappedProducts = null;
+        if (CatalogMode.fromSystemProperty() == CatalogMode.MAPPED) {
+            mappedProducts = storageService.openProductCatalog();
+            if (mappedProducts != null) {
+                productCounter = mappedProducts.slotCount();
+                imported = !snapshot && mappedProducts.size() > 0;
             }
-        } else {
-            products = new HashSet<>();
-        }
-        List<Meal> loadedMeals = storageService.loadMeals();
-        if (loadedMeals != null) {
-            meals = new HashSet<>(loadedMeals);
-            for (Meal m : loadedMeals) {
-                if (m.getId() >= mealCounter) {
-                    mealCounter = m.getId() + 1;
+        }
+        CatalogVersion.Editor editor = new CatalogVersion(mappedProducts).edit();
+        if (mappedProducts == null) {
+            if (snapshot) {
+                if (storageService.loadProductCatalog(product -> indexProduct(editor, product)) < 0) {
+                    throw new IllegalStateException("Cannot load the product snapshot "
+                            + DataStorageService.dataFile("products.bin") + ", the data files were left unchanged");
                 }
+            } else {
+                int loaded = storageService.loadProducts(product -> indexProduct(editor, product));
+                imported = loaded > 0;
+                importFailed = loaded < 0;
+            }
+        }
+        if (snapshot && storageService.loadProductChanges(product -> indexProduct(editor, product), editor::removeProduct) < 0) {
+            throw new IllegalStateException("Cannot load the product changes "
+                    + DataStorageService.dataFile("products-changes.bin") + ", the data files were left unchanged");
+        }
+        recipeStore = storageService.openRecipeStore();
+        if (snapshot) {
+            if (storageService.loadMealSnapshot(editor::ingredient, recipeStore, meal -> indexMeal(editor, meal)) < 0) {
+                throw new IllegalStateException("Cannot load the meal snapshot "
+                        + DataStorageService.dataFile("meals.bin") + ", the data files were left unchanged");
             }
         } else {
-            meals = new HashSet<>();
+            int loaded = storageService.loadMeals(editor::ingredient, meal -> indexMeal(editor, meal));
+            imported |= loaded > 0;
+            importFailed |= loaded < 0;
         }
-        shoppingList = new HashMap<>();
+        catalog = new AtomicReference<>(editor.build());
+        savedProducts = catalog.get();
+
+        persistenceMode = PersistenceMode.fromSystemProperty();
+        saveScheduler = new SaveScheduler(this::writeSnapshot, SAVE_COALESCE_WINDOW_MILLIS);
+        journal = new ChangeJournal(DataStorageService.dataFile("journal.jsonl"), saveScheduler, catalog::get);
+        int replayed = journal.replay(new JournalReplay());
+        if (!importFailed && (imported || replayed > 0 && (persistenceMode == PersistenceMode.SNAPSHOT || replayed >= JOURNAL_COMPACTION_THRESHOLD))) {
+            writeSnapshot(true, true);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "meal-planner-flush"));
+        Thread indexer = new Thread(this::buildProductNameIndex, "product-name-index");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    /**
+     * Builds the product name index from the current catalog version, on its own thread.
+     * The writer keeps running meanwhile: its changes are queued by the index, which was created before the version is taken.
+     */
+    private void buildProductNameIndex() {
+        long start = ServiceMetrics.start();
+        productNames.build(catalog.get(), DataStorageService.dataFile("products-names.dat"));
+        ServiceMetrics.record(ServiceOperation.BUILD_PRODUCT_NAME_INDEX, start);
+    }
+
+    /**
+     * Holds the singleton instance, created by the JVM on first use of the holder class,
+     * which guarantees a single, fully initialized instance without locking on each call.
+     */
+    private static class InstanceHolder {
+        private static final MealPlannerService INSTANCE = new MealPlannerService();
     }
 
     /**
      * Singleton instance getter for MealPlannerService.
+     * The instance is created on the first call, safely even if several threads call it at once.
      * @return the singleton instance of MealPlannerService
      */
     public static MealPlannerService getInstance() {
-        if (instance == null) {
-            instance = new MealPlannerService();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -77,12 +180,27 @@ public class MealPlannerService {
      * @param unit the unit of measurement for the product
      */
     public void addProduct(String name, double pricePerPack, double weightPerPack, String unit) {
-        Product product = new Product(productCounter++, name, pricePerPack, weightPerPack, unit);
-        products.add(product);
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            Product product = new Product(productCounter, name, pricePerPack, weightPerPack, unit);
+            indexProduct(editor, product);
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            productNames.put(product);
+            persistProduct(product);
+            fireCatalogChanged(version, CatalogChangeEvent.Entity.PRODUCT, CatalogChangeEvent.Type.ADDED, product.getId());
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.ADD_PRODUCT, start);
+        }
     }
 
     /**
      * Modifies an existing product in the product set.
+     * The product is replaced by a new instance, and so are the meals using it,
+     * so the versions taken before the change keep the old price.
      * @param id the ID of the product to modify
      * @param name the new name of the product
      * @param pricePerPack the new price per pack of the product
@@ -91,26 +209,62 @@ public class MealPlannerService {
      * @throws ProductNotFoundException if the product with the given ID is not found
      */
     public void modifyProduct(int id, String name, double pricePerPack, double weightPerPack, String unit) throws ProductNotFoundException {
-        for (Product product : products) {
-            if (product.getId() == id) {
-                product.setName(name);
-                product.setPricePerPack(pricePerPack);
-                product.setWeightPerPack(weightPerPack);
-                product.setUnit(unit);
-                DataStorageService.saveProducts(MealPlannerService.getInstance().getProducts());
-                return;
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            if (editor.getProduct(id) == null) {
+                throw new ProductNotFoundException(id);
+            }
+            Product product = new Product(id, name, pricePerPack, weightPerPack, unit);
+            int[] mealIds = replaceProduct(editor, product);
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            productNames.put(product);
+            persistProduct(product);
+            if (!listeners.isEmpty()) {
+                List<CatalogChangeEvent.Change> changes = new ArrayList<>(mealIds.length + 1);
+                changes.add(new CatalogChangeEvent.Change(CatalogChangeEvent.Entity.PRODUCT, CatalogChangeEvent.Type.UPDATED, id));
+                for (int mealId : mealIds) {
+                    changes.add(new CatalogChangeEvent.Change(CatalogChangeEvent.Entity.MEAL, CatalogChangeEvent.Type.UPDATED, mealId));
+                }
+                fireCatalogChanged(new CatalogChangeEvent(version, changes));
             }
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.MODIFY_PRODUCT, start);
         }
-        throw new ProductNotFoundException(id);
     }
 
     /**
      * Removes a product from the product set.
+     * Meals keep using the removed product,
+     * and their ingredients keep a copy of it once the meals are saved again.
      * @param id the ID of the product to remove
      */
     public void removeProduct(int id) {
-        products.removeIf(product -> product.getId() == id);
-        DataStorageService.saveProducts(MealPlannerService.getInstance().getProducts());
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            if (editor.removeProduct(id) == null) {
+                return;
+            }
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            productNames.remove(id);
+            if (persistenceMode == PersistenceMode.JOURNAL) {
+                journal.appendProductRemoval(id);
+                compactJournalIfNeeded();
+            } else {
+                saveScheduler.markProductsDirty();
+                saveScheduler.markMealsDirty();
+            }
+            fireCatalogChanged(version, CatalogChangeEvent.Entity.PRODUCT, CatalogChangeEvent.Type.REMOVED, id);
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.REMOVE_PRODUCT, start);
+        }
     }
 
     /**
@@ -120,9 +274,20 @@ public class MealPlannerService {
      * @param recipe the recipe for the meal
      */
     public void addMeal(String name, List<Ingredient> ingredients, String recipe) {
-        Meal meal = new Meal(mealCounter++, name, recipe, ingredients);
-        meals.add(meal);
-        DataStorageService.saveMeals(getMeals());
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            Meal meal = new Meal(mealCounter, name, recipe, shareProducts(editor, ingredients));
+            indexMeal(editor, meal);
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            persistMeal(meal);
+            fireCatalogChanged(version, CatalogChangeEvent.Entity.MEAL, CatalogChangeEvent.Type.ADDED, meal.getId());
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.ADD_MEAL, start);
+        }
     }
 
     /**
@@ -130,14 +295,32 @@ public class MealPlannerService {
      * @param id the ID of the meal to remove
      */
     public void removeMeal(int id) {
-        meals.removeIf(meal -> meal.getId() == id);
-        DataStorageService.saveMeals(getMeals());
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            if (unindexMeal(editor, id) == null) {
+                return;
+            }
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            if (persistenceMode == PersistenceMode.JOURNAL) {
+                journal.appendMealRemoval(id);
+                compactJournalIfNeeded();
+            } else {
+                saveScheduler.markMealsDirty();
+            }
+            fireCatalogChanged(version, CatalogChangeEvent.Entity.MEAL, CatalogChangeEvent.Type.REMOVED, id);
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.REMOVE_MEAL, start);
+        }
     }
 
     /**
      * Modifies an existing meal in the meal set.
-     * This method updates the meal's name, ingredients, and recipe.
-     * It also saves the updated meals to the storage service.
+     * This method replaces the meal by a new meal with the given name, ingredients, and recipe.
+     * It also saves the updated meal to the storage service.
      * @param id the ID of the meal to modify
      * @param name the new name of the meal
      * @param ingredients the new list of ingredients for the meal
@@ -145,16 +328,367 @@ public class MealPlannerService {
      * @throws MealNotFoundException if the meal with the given ID is not found
      */
     public void modifyMeal(int id, String name, List<Ingredient> ingredients, String recipe) throws MealNotFoundException {
-        for (Meal meal : meals) {
-            if (meal.getId() == id) {
-                meal.setName(name);
-                meal.setRecipe(recipe);
-                meal.setIngredients(ingredients);
-                DataStorageService.saveMeals(getMeals());
-                return;
+        long start = ServiceMetrics.start();
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            Meal meal = editor.getMeal(id);
+            if (meal == null) {
+                throw new MealNotFoundException(id);
             }
+            Meal updated = updateMeal(editor, meal, name, ingredients, recipe);
+            CatalogVersion version = editor.build();
+            catalog.set(version);
+            persistMeal(updated);
+            fireCatalogChanged(version, CatalogChangeEvent.Entity.MEAL, CatalogChangeEvent.Type.UPDATED, id);
+        } finally {
+            writeLock.unlock();
+            ServiceMetrics.record(ServiceOperation.MODIFY_MEAL, start);
         }
-        throw new MealNotFoundException(id);
+    }
+
+    /**
+     * Registers a listener notified after each change of the catalog.
+     * @param listener the listener
+     */
+    public void addCatalogChangeListener(CatalogChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener of the changes of the catalog.
+     * @param listener the listener
+     */
+    public void removeCatalogChangeListener(CatalogChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireCatalogChanged(CatalogVersion version, CatalogChangeEvent.Entity entity, CatalogChangeEvent.Type type, int id) {
+        if (!listeners.isEmpty()) {
+            fireCatalogChanged(new CatalogChangeEvent(version, List.of(new CatalogChangeEvent.Change(entity, type, id))));
+        }
+    }
+
+    /**
+     * Notifies the listeners, on the writer thread while it holds the write lock,
+     * so they receive the events in the order of the versions.
+     * A failing listener does not prevent the others from being notified.
+     * @param event the change
+     */
+    private void fireCatalogChanged(CatalogChangeEvent event) {
+        for (CatalogChangeListener listener : listeners) {
+            try {
+                listener.catalogChanged(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void indexProduct(CatalogVersion.Editor editor, Product product) {
+        editor.putProduct(product);
+        if (product.getId() >= productCounter) {
+            productCounter = product.getId() + 1;
+        }
+    }
+
+    /**
+     * Replaces a product, and every meal using it by a meal using the new product.
+     * The other meals are left untouched, and stay shared with the previous version.
+     * @param editor the editor of the next version
+     * @param product the new product
+     * @return the IDs of the replaced meals
+     */
+    private int[] replaceProduct(CatalogVersion.Editor editor, Product product) {
+        editor.putProduct(product);
+        int[] mealIds = productUsage.mealsUsing(product.getId());
+        int replaced = 0;
+        for (int mealId : mealIds) {
+            Meal meal = editor.getMeal(mealId);
+            if (meal == null) {
+                continue;
+            }
+            mealIds[replaced++] = mealId;
+            List<Ingredient> ingredients = new ArrayList<>(meal.getIngredients().size());
+            for (Ingredient ingredient : meal.getIngredients()) {
+                if (ingredient.getProductId() == product.getId()) {
+                    ingredients.add(new Ingredient(product, ingredient.getQuantity()));
+                } else {
+                    ingredients.add(ingredient);
+                }
+            }
+            Meal rebuilt = meal.copy();
+            rebuilt.setIngredients(List.copyOf(ingredients));
+            editor.putMeal(rebuilt);
+        }
+        return Arrays.copyOf(mealIds, replaced);
+    }
+
+    /**
+     * Makes the ingredients use the products of the catalog, in a list that is not shared with the caller.
+     * The user interface may pass copies or decoded views of the products,
+     * which must not be kept in meals since they are not the instances replaced when the products change.
+     * In MAPPED catalog mode, an unchanged product is referred to by ID, and is not held in memory.
+     * An ingredient whose product is no longer in the catalog is kept as it is.
+     * @param editor the editor of the next version
+     * @param ingredients the ingredients of a meal
+     * @return an unmodifiable list of the ingredients, using the catalog products
+     */
+    private static List<Ingredient> shareProducts(CatalogVersion.Editor editor, List<Ingredient> ingredients) {
+        List<Ingredient> shared = new ArrayList<>(ingredients.size());
+        for (Ingredient ingredient : ingredients) {
+            Ingredient resolved = editor.ingredient(ingredient.getProductId(), ingredient.getQuantity());
+            shared.add(resolved != null ? resolved : ingredient);
+        }
+        return List.copyOf(shared);
+    }
+
+    private void indexMeal(CatalogVersion.Editor editor, Meal meal) {
+        editor.putMeal(meal);
+        productUsage.mealAdded(meal);
+        if (meal.getId() >= mealCounter) {
+            mealCounter = meal.getId() + 1;
+        }
+    }
+
+    private Meal unindexMeal(CatalogVersion.Editor editor, int id) {
+        Meal meal = editor.removeMeal(id);
+        if (meal != null) {
+            productUsage.mealRemoved(id);
+        }
+        return meal;
+    }
+
+    private Meal updateMeal(CatalogVersion.Editor editor, Meal meal, String name, List<Ingredient> ingredients, String recipe) {
+        Meal updated = meal.copy();
+        updated.setName(name);
+        if (!Objects.equals(recipe, meal.getRecipe())) {
+            // Keeps an unchanged recipe in the recipe store
+            updated.setRecipe(recipe);
+        }
+        updated.setIngredients(shareProducts(editor, ingredients));
+        productUsage.mealRemoved(meal.getId());
+        editor.putMeal(updated);
+        productUsage.mealAdded(updated);
+        return updated;
+    }
+
+    private void persistProduct(Product product) {
+        if (persistenceMode == PersistenceMode.JOURNAL) {
+            journal.appendProduct(product);
+            compactJournalIfNeeded();
+        } else {
+            saveScheduler.markProductsDirty();
+        }
+    }
+
+    private void persistMeal(Meal meal) {
+        if (persistenceMode == PersistenceMode.JOURNAL) {
+            journal.appendMeal(meal);
+            compactJournalIfNeeded();
+        } else {
+            saveScheduler.markMealsDirty();
+        }
+    }
+
+    /**
+     * Schedules a rewrite of both snapshot files once the journal is large enough.
+     * The journal is cleared by writeSnapshot once both files are written.
+     */
+    private void compactJournalIfNeeded() {
+        if (journal.size() >= JOURNAL_COMPACTION_THRESHOLD) {
+            saveScheduler.markProductsDirty();
+            saveScheduler.markMealsDirty();
+        }
+    }
+
+    /**
+     * Writes the snapshot files from the current catalog version.
+     * The version is immutable, so it is serialized without holding any lock.
+     * The meals are written first, and refer by ID only to the products already in the product snapshot on disk,
+     * embedding the others: if the application stops between the two files,
+     * the meal snapshot refers to no product missing from the product snapshot.
+     * In MAPPED catalog mode, only the products changed over the mapped catalog are written, in the product changes file.
+     * In HEAP catalog mode, products.bin holds every product, and the mapped catalog files are deleted after it.
+     * Before the meals are written, their recipes are moved to the recipe store,
+     * and the recipe generations the written snapshot no longer refers to are deleted after it.
+     * In JOURNAL mode, the journal is cleared once both files are written.
+     * Every journal record appended before is already in the version,
+     * and if the application stops before the journal is cleared, it is replayed over the new snapshot,
+     * which gives the same state.
+     * @param writeProducts true if products.bin must be written
+     * @param writeMeals true if meals.bin must be written
+     */
+    private void writeSnapshot(boolean writeProducts, boolean writeMeals) {
+        CatalogVersion version = catalog.get();
+        boolean mealsWritten = false;
+        if (writeMeals) {
+            CatalogVersion written = storeRecipes(version);
+            CatalogVersion saved = savedProducts;
+            mealsWritten = DataStorageService.saveMealSnapshot(written.getMeals(),
+                    ingredient -> written.usesCatalogProduct(ingredient) && saved.containsProduct(ingredient.getProductId()));
+            version = written;
+            if (mealsWritten) {
+                Set<Integer> generations = new HashSet<>();
+                for (Meal meal : version.getMeals()) {
+                    if (meal.getRecipeLoader() == recipeStore) {
+                        generations.add(RecipeStore.generationOf(meal.getRecipeReference()));
+                    }
+                }
+                recipeStore.deleteUnreferenced(generations);
+            }
+        }
+        boolean productsWritten = false;
+        if (writeProducts) {
+            if (version.isMapped()) {
+                productsWritten = DataStorageService.saveProductChanges(version.getHeapProducts(), version.getRemovedMappedProductIds());
+            } else {
+                productsWritten = DataStorageService.saveProductSnapshot(version.getProducts()) && DataStorageService.deleteMappedCatalog();
+            }
+            if (productsWritten) {
+                savedProducts = version;
+            }
+        }
+        if (persistenceMode == PersistenceMode.JOURNAL && productsWritten && mealsWritten) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Moves the recipes held in memory by the meals of a version to the recipe store,
+     * so that the meal snapshot only refers to them, and the meals no longer keep their text.
+     * When enough stored recipes are no longer referenced, the live ones are first compacted into a new generation.
+     * Published meals are never modified: the meals whose recipe moved are replaced by copies
+     * holding the new reference, in a version published under the write lock.
+     * A meal changed in the meantime keeps its own recipe, unless it still refers to a compacted recipe,
+     * which is then moved along.
+     * A recipe that cannot be stored stays in the meal, and is written in the snapshot.
+     * @param version the version about to be written
+     * @return the version to write, which is the given one if no recipe moved
+     */
+    private CatalogVersion storeRecipes(CatalogVersion version) {
+        List<Meal> storedMeals = new ArrayList<>();
+        List<Meal> heldMeals = new ArrayList<>();
+        for (Meal meal : version.getMeals()) {
+            if (meal.getRecipeLoader() == recipeStore) {
+                storedMeals.add(meal);
+            } else if (meal.getRecipeLoader() == null && meal.getRecipe() != null) {
+                heldMeals.add(meal);
+            }
+        }
+        long[] compacted = null;
+        long[] appended = new long[heldMeals.size()];
+        try {
+            if (recipeStore.needsCompaction(storedMeals.size())) {
+                long[] references = new long[storedMeals.size()];
+                for (int i = 0; i < references.length; i++) {
+                    references[i] = storedMeals.get(i).getRecipeReference();
+                }
+                compacted = recipeStore.compact(references);
+            }
+            for (int i = 0; i < appended.length; i++) {
+                appended[i] = recipeStore.append(heldMeals.get(i).getRecipe());
+            }
+            if (appended.length > 0) {
+                recipeStore.force();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (compacted == null) {
+                return version;
+            }
+            // The compaction is on disk, only the recipes held in memory stay there
+            heldMeals.clear();
+        }
+        if (compacted == null && heldMeals.isEmpty()) {
+            return version;
+        }
+
+        writeLock.lock();
+        try {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            List<CatalogChangeEvent.Change> changes = new ArrayList<>();
+            if (compacted != null) {
+                for (int i = 0; i < compacted.length; i++) {
+                    Meal meal = storedMeals.get(i);
+                    Meal current = editor.getMeal(meal.getId());
+                    if (current != null && current.getRecipeLoader() == recipeStore
+                            && current.getRecipeReference() == meal.getRecipeReference()) {
+                        moveRecipe(editor, current, compacted[i], changes);
+                    }
+                }
+            }
+            for (int i = 0; i < heldMeals.size(); i++) {
+                Meal meal = heldMeals.get(i);
+                if (editor.getMeal(meal.getId()) == meal) {
+                    moveRecipe(editor, meal, appended[i], changes);
+                }
+            }
+            CatalogVersion stored = editor.build();
+            catalog.set(stored);
+            if (!listeners.isEmpty() && !changes.isEmpty()) {
+                fireCatalogChanged(new CatalogChangeEvent(stored, changes));
+            }
+            return stored;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void moveRecipe(CatalogVersion.Editor editor, Meal meal, long reference, List<CatalogChangeEvent.Change> changes) {
+        Meal moved = meal.copy();
+        moved.setRecipeReference(recipeStore, reference);
+        editor.putMeal(moved);
+        changes.add(new CatalogChangeEvent.Change(CatalogChangeEvent.Entity.MEAL, CatalogChangeEvent.Type.UPDATED, meal.getId()));
+    }
+
+    /**
+     * Waits until every pending write is on disk.
+     * Called automatically when the JVM shuts down.
+     */
+    public void flush() {
+        saveScheduler.flush();
+    }
+
+    /**
+     * Rewrites the whole product catalog, folding in every product change.
+     * In MAPPED catalog mode, product changes are saved apart from the mapped catalog file,
+     * which is only rebuilt here, along with products.bin, and the changes file is then deleted.
+     * The running catalog keeps reading the previous mapping, which holds the same products once the changes are laid over it.
+     * In HEAP catalog mode, products.bin is rewritten.
+     * The write runs on the writer thread, after the pending ones, and this method waits for it.
+     * @return true if the catalog was rewritten
+     */
+    public boolean compactProductCatalog() {
+        return saveScheduler.executeAndWait(() -> {
+            CatalogVersion version = catalog.get();
+            boolean compacted = version.isMapped()
+                    ? DataStorageService.compactProductCatalog(version.getProducts())
+                    : DataStorageService.saveProductSnapshot(version.getProducts()) && DataStorageService.deleteMappedCatalog();
+            if (compacted) {
+                savedProducts = version;
+            }
+            return compacted;
+        });
+    }
+
+    /**
+     * Exports the catalog to "products.json" and "meals.json".
+     * The JSON files are not read back while the binary snapshots exist,
+     * they are only imported when a snapshot is missing.
+     * @return true if both files were written
+     */
+    public boolean exportCatalogToJson() {
+        long start = ServiceMetrics.start();
+        CatalogVersion version = catalog.get();
+        List<Meal> mealsWithRecipes = new ArrayList<>(version.getMeals().size());
+        for (Meal m : version.getMeals()) {
+            mealsWithRecipes.add(new Meal(m.getId(), m.getName(), m.getRecipe(), m.getIngredients()));
+        }
+        boolean written = DataStorageService.saveProducts(version.getProducts())
+                && DataStorageService.saveMeals(mealsWithRecipes, version::usesCatalogProduct);
+        ServiceMetrics.record(ServiceOperation.EXPORT_CATALOG, start);
+        return written;
     }
 
     /**
@@ -164,86 +698,349 @@ public class MealPlannerService {
      * @param maxBudget the maximum budget for the meal plan
      * @param mealCount the number of meals to include in the meal plan
      * @return a MealPlan object containing the selected meals
+     * @throws IllegalArgumentException if mealCount is not positive
      */
     public MealPlan generateMealPlan(double maxBudget, int mealCount) {
-        if (meals.isEmpty()) {
+        return generateMealPlan(maxBudget, mealCount, GenerationMode.RANDOM);
+    }
+
+    /**
+     * Generates a meal plan based on the maximum budget and number of meals, with a random seed.
+     * @param maxBudget the maximum budget for the meal plan
+     * @param mealCount the number of meals to include in the meal plan
+     * @param mode the generation strategy
+     * @return a MealPlan object containing the selected meals, or null if there are no meals
+     * @throws IllegalArgumentException if mealCount is not positive
+     * @see #generateMealPlan(double, int, GenerationMode, long)
+     */
+    public MealPlan generateMealPlan(double maxBudget, int mealCount, GenerationMode mode) {
+        return generateMealPlan(maxBudget, mealCount, mode, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Generates a meal plan based on the maximum budget and number of meals.
+     * In RANDOM mode, meals are picked in random order as long as they fit in the budget.
+     * In OPTIMAL mode, a branch-and-bound search looks for exactly mealCount meals
+     * using as much of the budget as possible, for at most OPTIMAL_TIME_BUDGET_MILLIS.
+     * If the search finds no such combination, the RANDOM mode is used instead.
+     * The random order is drawn from a SplittableRandom created with the given seed,
+     * so the same seed and parameters give the same plan on the same catalog.
+     * @param maxBudget the maximum budget for the meal plan
+     * @param mealCount the number of meals to include in the meal plan
+     * @param mode the generation strategy
+     * @param seed the seed of the random generator
+     * @return a MealPlan object containing the selected meals, or null if there are no meals
+     * @throws IllegalArgumentException if mealCount is not positive
+     */
+    public MealPlan generateMealPlan(double maxBudget, int mealCount, GenerationMode mode, long seed) {
+        return generateMealPlan(catalog.get(), maxBudget, mealCount, mode, seed);
+    }
+
+    /**
+     * Generates a meal plan from a given catalog version, as generateMealPlan(double, int, GenerationMode, long).
+     * A caller that also reads the catalog, such as to price the meals of the plan,
+     * passes the version it reads, so the plan and the costs come from the same catalog.
+     * @param catalog the catalog version to pick the meals from
+     * @param maxBudget the maximum budget for the meal plan
+     * @param mealCount the number of meals to include in the meal plan
+     * @param mode the generation strategy
+     * @param seed the seed of the random generator
+     * @return a MealPlan object containing the selected meals, or null if there are no meals
+     * @throws IllegalArgumentException if mealCount is not positive
+     */
+    public MealPlan generateMealPlan(CatalogVersion catalog, double maxBudget, int mealCount, GenerationMode mode, long seed) {
+        checkMealCount(mealCount);
+        long start = ServiceMetrics.start();
+        MealPlanGenerator generator = catalog.getPlanGenerator();
+        if (generator.size() == 0) {
+            ServiceMetrics.record(ServiceOperation.GENERATE_MEAL_PLAN, start);
             return null;
         }
 
-        List<Meal> allMeals = new ArrayList<>(meals);
-        Collections.shuffle(allMeals); 
+        MealPlan plan = createMealPlan(generator, maxBudget, mealCount, mode, seed);
+        ServiceMetrics.record(ServiceOperation.GENERATE_MEAL_PLAN, start);
+        return plan;
+    }
 
-        List<Meal> selectedMeals = new ArrayList<>();
-        double totalCost = 0.0;
+    /**
+     * Generates one meal plan per request, in parallel on the common fork-join pool.
+     * All the requests share the same precomputed candidates and costs,
+     * and each request draws from its own random generator seeded with the seed of the request.
+     * @param requests the plans to generate
+     * @return the generated meal plans, in the order of the requests, or an empty list if there are no meals
+     * @throws IllegalArgumentException if the meal count of a request is not positive
+     */
+    public List<MealPlan> generateMealPlans(List<PlanRequest> requests) {
+        for (PlanRequest request : requests) {
+            checkMealCount(request.getMealCount());
+        }
+        long start = ServiceMetrics.start();
+        MealPlanGenerator generator = getPlanGenerator();
+        if (generator.size() == 0) {
+            ServiceMetrics.record(ServiceOperation.GENERATE_MEAL_PLANS, start);
+            return new ArrayList<>();
+        }
 
-        
-        for (Meal meal : allMeals) {
-            if (selectedMeals.size() >= mealCount) {
-                break;
-            }
+        List<MealPlan> plans = requests.parallelStream()
+                .map(request -> createMealPlan(generator, request.getMaxBudget(), request.getMealCount(),
+                        request.getMode(), request.getSeed()))
+                .toList();
+        ServiceMetrics.record(ServiceOperation.GENERATE_MEAL_PLANS, start);
+        return plans;
+    }
 
-            double mealCost = calculateMealCost(meal);
+    private static void checkMealCount(int mealCount) {
+        if (mealCount <= 0) {
+            throw new IllegalArgumentException("The number of meals must be positive: " + mealCount);
+        }
+    }
 
-            if (totalCost + mealCost <= maxBudget) {
-                selectedMeals.add(meal);
-                totalCost += mealCost;
-            }
+    private MealPlan createMealPlan(MealPlanGenerator generator, double maxBudget, int mealCount,
+                                    GenerationMode mode, long seed) {
+        MealPlanEvent event = new MealPlanEvent();
+        event.begin();
+        List<Meal> selectedMeals = null;
+        if (mode == GenerationMode.OPTIMAL) {
+            selectedMeals = generator.generateOptimal(maxBudget, mealCount,
+                    TimeUnit.MILLISECONDS.toNanos(OPTIMAL_TIME_BUDGET_MILLIS), event);
         }
+        if (selectedMeals == null) {
+            selectedMeals = generator.generateRandom(maxBudget, mealCount, new SplittableRandom(seed), event);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = mode.name();
+            event.maxBudget = maxBudget;
+            event.requestedMeals = mealCount;
+            event.candidates = generator.size();
+            event.selectedMeals = selectedMeals.size();
+            event.seed = seed;
+            event.commit();
+        }
+        return new MealPlan(mealPlanCounter.getAndIncrement(), "Plan de repas n°" + Long.toHexString(seed), selectedMeals, seed);
+    }
 
-        return new MealPlan(mealPlanCounter++, "Plan de repas du " + new Date(), new Date(), selectedMeals);
+    /**
+     * Returns the plan generator for the current catalog version.
+     * The candidates and their costs are collected once per version,
+     * so every plan generated from it uses the same catalog.
+     * The generator is immutable, so plans are generated from it without holding any lock.
+     * @return the plan generator
+     */
+    private MealPlanGenerator getPlanGenerator() {
+        return catalog.get().getPlanGenerator();
     }
 
     /**
      * Generates a shopping list based on the provided meal plan.
      * This method iterates through the meals and their ingredients,
-     * aggregating the quantities of each product.
+     * aggregating the quantities of each product by product ID in a primitive accumulator,
+     * so copies of the same product coming from different meals end up in the same item.
      * @param plan the meal plan to generate the shopping list from
-     * @return a map of products and their total quantities
+     * @return the shopping list, with one item per product sorted by product name
      */
-    public Map<Product, Double> generateShoppingList(MealPlan plan) {
-        Map<Product, Double> shoppingList = new HashMap<>();
-
+    public ShoppingList generateShoppingList(MealPlan plan) {
         if (plan == null || plan.getMeals() == null || plan.getMeals().isEmpty()) {
-            return shoppingList;
+            return new ShoppingList(List.of());
         }
 
+        long start = ServiceMetrics.start();
+        ShoppingListEvent event = new ShoppingListEvent();
+        event.begin();
+        IntDoubleMap quantities = new IntDoubleMap();
+        IntObjectMap<Product> productsInList = new IntObjectMap<>();
         for (Meal meal : plan.getMeals()) {
             for (Ingredient ingredient : meal.getIngredients()) {
                 Product product = ingredient.getProduct();
-                double currentQuantity = shoppingList.getOrDefault(product, 0.0);
-                shoppingList.put(product, currentQuantity + ingredient.getQuantity());
+                quantities.addTo(product.getId(), ingredient.getQuantity());
+                if (!productsInList.containsKey(product.getId())) {
+                    productsInList.put(product.getId(), product);
+                }
             }
         }
 
-        this.shoppingList = shoppingList;
+        List<ShoppingList.Item> items = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> items.add(new ShoppingList.Item(productsInList.get(productId), quantity)));
+        items.sort(Comparator.comparing((ShoppingList.Item item) -> item.getProduct().getName()));
+
+        ShoppingList shoppingList = new ShoppingList(items);
+        event.end();
+        if (event.shouldCommit()) {
+            event.meals = plan.getMeals().size();
+            event.items = items.size();
+            event.commit();
+        }
+        ServiceMetrics.record(ServiceOperation.GENERATE_SHOPPING_LIST, start);
         return shoppingList;
     }
 
+    /**
+     * Exports a meal plan to a markdown file.
+     * The meals of a plan are never modified, so the export sees the catalog as it was when the plan was generated.
+     * @param mealPlan the meal plan to export
+     * @param filePath the path of the markdown file
+     * @return true if the export succeeded
+     */
     public boolean exportMealPlanToMarkdown(MealPlan mealPlan, String filePath) {
         return storageService.exportMealPlanToMarkdown(mealPlan, filePath);
     }
 
+    /**
+     * Formats a meal plan as markdown, as exportMealPlanToMarkdown writes it, without writing any file.
+     * @param mealPlan the meal plan to format
+     * @return the markdown text, or null if the plan has no meals
+     */
+    public String formatMealPlanAsMarkdown(MealPlan mealPlan) {
+        if (mealPlan == null || mealPlan.getMeals() == null || mealPlan.getMeals().isEmpty()) {
+            return null;
+        }
+        StringWriter markdown = new StringWriter();
+        storageService.writeMealPlanMarkdown(mealPlan, new PrintWriter(markdown));
+        return markdown.toString();
+    }
+
     /**
      * Calculates the total cost of a meal based on its ingredients.
-     * This method iterates through the ingredients of the meal,
-     * calculating the cost based on the product's price and quantity.
+     * The cost of a meal of the current version is read from the cost table of the version,
+     * which is updated when one of its products or its ingredients change.
+     * Other meals, such as the meals of a plan generated from an older version,
+     * are calculated by iterating through their ingredients.
      * @param meal the meal to calculate the cost for
      * @return the total cost of the meal
      */
     public double calculateMealCost(Meal meal) {
-        double cost = 0.0;
-        for (Ingredient ingredient : meal.getIngredients()) {
-            Product product = ingredient.getProduct();
-            cost += (ingredient.getQuantity() / product.getWeightPerPack()) * product.getPricePerPack();
-        }
-        return cost;
+        return catalog.get().getMealCost(meal);
+    }
+
+    /**
+     * Returns the current version of the catalog, without locking.
+     * The version never changes, so a long operation reading it sees a consistent catalog from start to end,
+     * even while products and meals are being changed.
+     * @return the current catalog version
+     */
+    public CatalogVersion getCatalog() {
+        return catalog.get();
     }
 
-    public Set<Meal> getMeals() {
-        return meals;
+    /**
+     * Returns the product with the given ID.
+     * The lookup uses the ID index and does not scan the product set.
+     * @param id the ID of the product
+     * @return the product, or null if no product has this ID
+     */
+    public Product getProductById(int id) {
+        return catalog.get().getProductById(id);
     }
 
-    public Set<Product> getProducts() {
+    /**
+     * Returns the IDs of every product, in ascending order.
+     * Together with getProductById, it lets the user interface show a large catalog a page at a time,
+     * without decoding every product of a MAPPED catalog.
+     * @return the sorted product IDs
+     */
+    public int[] getProductIds() {
+        return catalog.get().getProductIds();
+    }
+
+    /**
+     * Finds the products whose name starts with or contains a query, for a type-ahead picker.
+     * Names are compared without case or accents.
+     * The products whose name starts with the query come first, in name order, then the other matches in ID order.
+     * The name index is built in the background at startup, and a search made before it is ready waits for it,
+     * so it should not run on the event dispatch thread;
+     * then each search reads only the few products it returns.
+     * @param query the text typed by the user, an empty query matching every product in ID order
+     * @param limit the maximum number of products returned
+     * @return the matching products
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        long start = ServiceMetrics.start();
+        int[] ids = productNames.search(query, limit);
+        CatalogVersion version = catalog.get();
+        List<Product> products = new ArrayList<>(limit);
+        for (int id : ids) {
+            Product product = version.getProductById(id);
+            // The index may be one change ahead of the version
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        ServiceMetrics.record(ServiceOperation.SEARCH_PRODUCTS, start);
         return products;
     }
+
+    /**
+     * Returns the meal with the given ID.
+     * The lookup uses the ID index and does not scan the meal set.
+     * @param id the ID of the meal
+     * @return the meal, or null if no meal has this ID
+     */
+    public Meal getMealById(int id) {
+        return catalog.get().getMealById(id);
+    }
+
+    /**
+     * Returns the meals of the current catalog version.
+     * The version never changes, so the view is a snapshot without copying the meals.
+     * @return a read-only view of the meals, in no particular order
+     */
+    public Collection<Meal> getMeals() {
+        return catalog.get().getMeals();
+    }
+
+    /**
+     * Returns the products of the current catalog version.
+     * The version never changes, so the view is a snapshot without copying the products.
+     * In MAPPED catalog mode, the products are decoded while the view is iterated,
+     * prefer getProductIds and getProductById for large catalogs.
+     * @return a read-only view of the products
+     */
+    public Collection<Product> getProducts() {
+        return catalog.get().getProducts();
+    }
+
+    /**
+     * Applies the records of the journal to the catalog, without persisting them again.
+     * Each record publishes a new version, as the changes made by the user interface,
+     * so meals keep sharing the product instances of the version they belong to.
+     */
+    private class JournalReplay implements ChangeJournal.Handler {
+        @Override
+        public void putProduct(Product product) {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            if (editor.getProduct(product.getId()) != null) {
+                replaceProduct(editor, product);
+            } else {
+                indexProduct(editor, product);
+            }
+            catalog.set(editor.build());
+        }
+
+        @Override
+        public void removeProduct(int id) {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            editor.removeProduct(id);
+            catalog.set(editor.build());
+        }
+
+        @Override
+        public void putMeal(Meal meal) {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            Meal existing = editor.getMeal(meal.getId());
+            if (existing != null) {
+                updateMeal(editor, existing, meal.getName(), meal.getIngredients(), meal.getRecipe());
+            } else {
+                meal.setIngredients(shareProducts(editor, meal.getIngredients()));
+                indexMeal(editor, meal);
+            }
+            catalog.set(editor.build());
+        }
+
+        @Override
+        public void removeMeal(int id) {
+            CatalogVersion.Editor editor = catalog.get().edit();
+            unindexMeal(editor, id);
+            catalog.set(editor.build());
+        }
+    }
 }
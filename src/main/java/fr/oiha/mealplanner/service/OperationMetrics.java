@@ -0,0 +1,106 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OperationMetrics holds the metrics of one operation:
+ * the number of calls and of failed calls, the histogram of their durations,
+ * and the number of bytes read or written by them.
+ * It is updated without locking by any number of threads.
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+    private final ServiceOperation operation;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder bytes = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    OperationMetrics(ServiceOperation operation) {
+        this.operation = operation;
+    }
+
+    void record(long nanos, long byteCount, boolean failed) {
+        count.increment();
+        if (failed) {
+            errorCount.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.record(nanos);
+        if (byteCount > 0) {
+            bytes.add(byteCount);
+        }
+    }
+
+    public ServiceOperation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : totalNanos.sum() / 1e6 / calls;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return getPercentileMillis(99.9);
+    }
+
+    /**
+     * Returns a percentile of the durations, never above the longest duration recorded.
+     * @param percentile the percentile, from 0 to 100
+     * @return the duration in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        return Math.min(histogram.percentile(percentile), maxNanos.get()) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        errorCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        bytes.reset();
+        histogram.reset();
+    }
+}
@@ -0,0 +1,27 @@
+package fr.oiha.mealplanner.service;
+
+/**
+ * The JMX view of the metrics of an operation, registered as "fr.oiha.mealplanner:type=Operation,name=methodName".
+ * @see OperationMetrics
+ */
+public interface OperationMetricsMBean {
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    long getBytes();
+
+    void reset();
+}
@@ -0,0 +1,32 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.Locale;
+
+/**
+ * The ways MealPlannerService can persist the changes made to products and meals.
+ * The mode is read from the "mealplanner.persistence" system property, JOURNAL by default.
+ * An unknown value is reported, and the default mode is used instead.
+ */
+public enum PersistenceMode {
+    /**
+     * Every change rewrites the whole products.bin or meals.bin snapshot file.
+     */
+    SNAPSHOT,
+
+    /**
+     * Every change appends one record to journal.jsonl.
+     * The snapshot files are rewritten, and the journal cleared,
+     * once the journal reaches MealPlannerService.JOURNAL_COMPACTION_THRESHOLD records.
+     */
+    JOURNAL;
+
+    static PersistenceMode fromSystemProperty() {
+        String mode = System.getProperty("mealplanner.persistence", JOURNAL.name());
+        try {
+            return valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown persistence mode \"" + mode + "\", using " + JOURNAL);
+            return JOURNAL;
+        }
+    }
+}
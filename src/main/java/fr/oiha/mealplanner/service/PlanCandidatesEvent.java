@@ -0,0 +1,25 @@
+package fr.oiha.mealplanner.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the collection of the plan candidates and their costs for a catalog version,
+ * done by the first plan generated after each change of the catalog.
+ */
+@Name("fr.oiha.mealplanner.PlanCandidates")
+@Label("Plan Candidates Costing")
+@Category({"Meal Planner", "Service"})
+@Description("Collection and sorting of the meals and costs of a catalog version")
+@StackTrace(false)
+class PlanCandidatesEvent extends Event {
+    @Label("Catalog Version")
+    long version;
+
+    @Label("Candidates")
+    int candidates;
+}
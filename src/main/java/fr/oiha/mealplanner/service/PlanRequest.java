@@ -0,0 +1,41 @@
+package fr.oiha.mealplanner.service;
+
+/**
+ * Represents a request for one meal plan in a batch.
+ * Contains the maximum budget, the number of meals, the seed of the random generator
+ * and the generation mode.
+ * @see MealPlannerService#generateMealPlans(java.util.List)
+ */
+public class PlanRequest {
+    private final double maxBudget;
+    private final int mealCount;
+    private final long seed;
+    private final GenerationMode mode;
+
+    public PlanRequest(double maxBudget, int mealCount, long seed) {
+        this(maxBudget, mealCount, seed, GenerationMode.RANDOM);
+    }
+
+    public PlanRequest(double maxBudget, int mealCount, long seed, GenerationMode mode) {
+        this.maxBudget = maxBudget;
+        this.mealCount = mealCount;
+        this.seed = seed;
+        this.mode = mode;
+    }
+
+    public double getMaxBudget() {
+        return maxBudget;
+    }
+
+    public int getMealCount() {
+        return mealCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public GenerationMode getMode() {
+        return mode;
+    }
+}
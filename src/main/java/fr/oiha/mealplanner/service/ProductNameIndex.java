@@ -0,0 +1,434 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Product;
+import fr.oiha.mealplanner.util.IntObjectMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * ProductNameIndex finds products by name as the user types it.
+ * Names are compared in lower case, without accents, and with every run of other characters than letters and digits
+ * read as a single space.
+ * The products whose name starts with the query come first, in name order, from a sorted map of the names.
+ * Then come the products whose name contains the query, in ID order: their IDs are the intersection of the
+ * sorted ID lists of the trigrams of the query, checked against the name since the trigrams may be anywhere in it.
+ * A query of two characters only matches the start of a word, through the trigram made of a space and the query.
+ * A search stops as soon as it has found enough matches, so it reads a few IDs whatever the number of products.
+ * The index is built once, on a background thread, without holding the lock of the catalog writer:
+ * the changes the writer makes meanwhile are queued and applied when the build ends, and searches wait for it.
+ * In MAPPED catalog mode, the products of the mapped catalog are found in a MappedProductNameIndex,
+ * and only the products changed or added since the catalog was mapped are indexed on the heap,
+ * hiding the mapped products they replace and the removed ones.
+ * It is updated by the writer of the catalog, while searches may run on any thread.
+ * @see MappedProductNameIndex
+ */
+class ProductNameIndex {
+    private static final int[] NO_IDS = new int[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CountDownLatch built = new CountDownLatch(1);
+    // Changes made while the index is built, null once it is built
+    private List<Runnable> pending = new ArrayList<>();
+    private MappedProductNameIndex mapped;
+    // Products of the mapped index that were changed or removed
+    private final BitSet hidden = new BitSet();
+    private final IntObjectMap<String> namesById = new IntObjectMap<>();
+    private final NavigableMap<String, IdList> idsByName = new TreeMap<>();
+    private final IntObjectMap<IdList> idsByTrigram = new IntObjectMap<>();
+    private final IdList allIds = new IdList();
+
+    /**
+     * Indexes the products of a catalog version, then applies the changes queued meanwhile.
+     * The version must be taken once the index queues changes, so a queued change may already be in the version,
+     * which applying it again leaves unchanged.
+     * In MAPPED catalog mode, the mapped index is opened, and built first if it does not match the catalog file;
+     * if it cannot be, every product is indexed on the heap.
+     * @param catalog the catalog version
+     * @param mappedIndexFile the file of the mapped index
+     */
+    void build(CatalogVersion catalog, File mappedIndexFile) {
+        try {
+            MappedProductCatalog mappedProducts = catalog.getMappedProducts();
+            if (mappedProducts != null) {
+                try {
+                    mapped = MappedProductNameIndex.open(mappedIndexFile, mappedProducts);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (mapped == null) {
+                for (int id : catalog.getProductIds()) {
+                    Product product = catalog.getProductById(id);
+                    if (product != null) {
+                        add(id, normalize(product.getName()));
+                    }
+                }
+            } else {
+                for (Product product : catalog.getHeapProducts()) {
+                    index(product);
+                }
+                for (int id : catalog.getRemovedMappedProductIds()) {
+                    unindex(id);
+                }
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                List<Runnable> queued = pending;
+                pending = null;
+                queued.forEach(Runnable::run);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            built.countDown();
+        }
+    }
+
+    /**
+     * Indexes a new product, or the new name of a modified product.
+     * @param product the product
+     */
+    void put(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(() -> index(product));
+            } else {
+                index(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a product from the index.
+     * @param id the ID of the product
+     */
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(() -> unindex(id));
+            } else {
+                unindex(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(Product product) {
+        hide(product.getId());
+        String name = normalize(product.getName());
+        String previous = namesById.get(product.getId());
+        if (name.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            remove(product.getId(), previous);
+        }
+        add(product.getId(), name);
+    }
+
+    private void unindex(int id) {
+        hide(id);
+        String name = namesById.get(id);
+        if (name != null) {
+            remove(id, name);
+        }
+    }
+
+    private void hide(int id) {
+        if (mapped != null && mapped.contains(id)) {
+            hidden.set(id);
+        }
+    }
+
+    /**
+     * Finds the products whose name matches a query.
+     * An empty query matches every product, in ID order.
+     * Waits for the index to be built.
+     * @param query the text typed by the user
+     * @param limit the maximum number of matches
+     * @return the IDs of the matching products, the name prefix matches first,
+     * or no IDs if the thread is interrupted while waiting for the index
+     */
+    int[] search(String query, int limit) {
+        String normalized = normalize(query);
+        try {
+            built.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return NO_IDS;
+        }
+        lock.readLock().lock();
+        try {
+            IntPredicate visible = id -> !hidden.get(id);
+            Matches matches = new Matches(limit);
+            if (normalized.isEmpty()) {
+                Matches heapIds = new Matches(limit);
+                for (int i = 0; i < allIds.size && !heapIds.isFull(); i++) {
+                    heapIds.add(allIds.ids[i]);
+                }
+                mergeById(heapIds.toArray(), mapped == null ? NO_IDS : mapped.ids(visible, limit), matches);
+                return matches.toArray();
+            }
+
+            mergeByName(startingWith(normalized, limit),
+                    mapped == null ? NO_IDS : mapped.startingWith(normalized, visible, limit), matches);
+            if (matches.isFull()) {
+                return matches.toArray();
+            }
+
+            // Within a name, words are separated by single spaces, and the name is preceded by one
+            String pattern = normalized.length() >= 3 ? normalized : normalized.length() == 2 ? " " + normalized : null;
+            if (pattern == null) {
+                return matches.toArray();
+            }
+            int remaining = limit - matches.size;
+            mergeById(containing(pattern, normalized, remaining),
+                    mapped == null ? NO_IDS : mapped.containing(pattern, normalized, visible, remaining), matches);
+            return matches.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the IDs of the heap products whose name starts with a prefix, in name order.
+     */
+    private int[] startingWith(String prefix, int limit) {
+        Matches matches = new Matches(limit);
+        for (IdList ids : idsByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < ids.size && !matches.isFull(); i++) {
+                matches.add(ids.ids[i]);
+            }
+            if (matches.isFull()) {
+                break;
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Returns the IDs of the heap products whose padded name contains a pattern but does not start with the query,
+     * in ID order.
+     */
+    private int[] containing(String pattern, String query, int limit) {
+        Matches matches = new Matches(limit);
+        IdList[] lists = new IdList[pattern.length() - 2];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = idsByTrigram.get(trigram(pattern, i));
+            if (lists[i] == null) {
+                return matches.toArray();
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        IdList smallest = lists[0];
+        for (int i = 0; i < smallest.size && !matches.isFull(); i++) {
+            int id = smallest.ids[i];
+            if (containsAll(lists, id) && (" " + namesById.get(id)).contains(pattern)
+                    && !namesById.get(id).startsWith(query)) {
+                matches.add(id);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Adds the IDs of the heap and mapped prefix matches in name order, then ID order for a same name.
+     */
+    private void mergeByName(int[] heapIds, int[] mappedIds, Matches matches) {
+        int i = 0;
+        int j = 0;
+        while (!matches.isFull() && (i < heapIds.length || j < mappedIds.length)) {
+            boolean heapFirst = j == mappedIds.length;
+            if (!heapFirst && i < heapIds.length) {
+                int order = namesById.get(heapIds[i]).compareTo(mapped.name(mappedIds[j]));
+                heapFirst = order < 0 || order == 0 && heapIds[i] < mappedIds[j];
+            }
+            matches.add(heapFirst ? heapIds[i++] : mappedIds[j++]);
+        }
+    }
+
+    /**
+     * Adds the IDs of the heap and mapped matches in ID order.
+     */
+    private static void mergeById(int[] heapIds, int[] mappedIds, Matches matches) {
+        int i = 0;
+        int j = 0;
+        while (!matches.isFull() && (i < heapIds.length || j < mappedIds.length)) {
+            boolean heapFirst = j == mappedIds.length || i < heapIds.length && heapIds[i] < mappedIds[j];
+            matches.add(heapFirst ? heapIds[i++] : mappedIds[j++]);
+        }
+    }
+
+    private static boolean containsAll(IdList[] lists, int id) {
+        for (int i = 1; i < lists.length; i++) {
+            if (!lists[i].contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(int id, String name) {
+        namesById.put(id, name);
+        allIds.add(id);
+        idsByName.computeIfAbsent(name, n -> new IdList()).add(id);
+        String padded = " " + name;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int trigram = trigram(padded, i);
+            IdList ids = idsByTrigram.get(trigram);
+            if (ids == null) {
+                ids = new IdList();
+                idsByTrigram.put(trigram, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    private void remove(int id, String name) {
+        namesById.remove(id);
+        allIds.remove(id);
+        IdList ids = idsByName.get(name);
+        if (ids != null && ids.remove(id) && ids.size == 0) {
+            idsByName.remove(name);
+        }
+        String padded = " " + name;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int trigram = trigram(padded, i);
+            IdList trigramIds = idsByTrigram.get(trigram);
+            if (trigramIds != null && trigramIds.remove(id) && trigramIds.size == 0) {
+                idsByTrigram.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the trigram starting at an index of a string.
+     * The key is exact for characters below 1024, which covers the Latin scripts once the accents are removed;
+     * other characters may give the same key as another trigram,
+     * which only adds candidates that are then rejected by checking their name.
+     * @param text the string
+     * @param index the index of the first character of the trigram
+     * @return the key of the trigram
+     */
+    static int trigram(String text, int index) {
+        return text.charAt(index) << 20 ^ text.charAt(index + 1) << 10 ^ text.charAt(index + 2);
+    }
+
+    /**
+     * Returns a name as it is compared:
+     * in lower case, without accents, with single spaces between the words, and without leading or trailing spaces.
+     * @param name the name or query
+     * @return the normalized name
+     */
+    static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Sorted list of product IDs.
+     * New products get increasing IDs, so adding one is usually an append.
+     */
+    private static final class IdList {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && id <= ids[size - 1]) {
+                int index = Arrays.binarySearch(ids, 0, size, id);
+                if (index >= 0) {
+                    return;
+                }
+                insert(-index - 1, id);
+                return;
+            }
+            insert(size, id);
+        }
+
+        private void insert(int index, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * The IDs found by a search, without duplicates, up to its limit.
+     */
+    static final class Matches {
+        private final int[] ids;
+        private int size;
+
+        Matches(int limit) {
+            ids = new int[Math.max(limit, 0)];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        void add(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return;
+                }
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
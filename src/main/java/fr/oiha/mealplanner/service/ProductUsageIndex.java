@@ -0,0 +1,80 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.Ingredient;
+import fr.oiha.mealplanner.model.Meal;
+import fr.oiha.mealplanner.util.IntObjectMap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ProductUsageIndex is a reverse index from product ID to the IDs of the meals using that product.
+ * When a product changes, it gives exactly the meals that must be rebuilt with the new product,
+ * the other meals being shared with the previous catalog version.
+ * It is only used by the writer of the catalog, and is not thread-safe.
+ */
+class ProductUsageIndex {
+    private static final int[] NO_MEALS = new int[0];
+
+    private final IntObjectMap<Set<Integer>> mealIdsByProductId = new IntObjectMap<>();
+    private final IntObjectMap<int[]> productIdsByMealId = new IntObjectMap<>();
+
+    /**
+     * Registers a meal in the reverse index.
+     * Must be called when a meal is added, and after its ingredients are replaced.
+     * @param meal the meal to register
+     */
+    void mealAdded(Meal meal) {
+        int[] productIds = new int[meal.getIngredients().size()];
+        int i = 0;
+        for (Ingredient ingredient : meal.getIngredients()) {
+            int productId = ingredient.getProductId();
+            productIds[i++] = productId;
+            Set<Integer> mealIds = mealIdsByProductId.get(productId);
+            if (mealIds == null) {
+                mealIds = new HashSet<>();
+                mealIdsByProductId.put(productId, mealIds);
+            }
+            mealIds.add(meal.getId());
+        }
+        productIdsByMealId.put(meal.getId(), productIds);
+    }
+
+    /**
+     * Unregisters a meal.
+     * Must be called when a meal is removed, and before its ingredients are replaced.
+     * @param mealId the ID of the meal to unregister
+     */
+    void mealRemoved(int mealId) {
+        int[] productIds = productIdsByMealId.remove(mealId);
+        if (productIds != null) {
+            for (int productId : productIds) {
+                Set<Integer> mealIds = mealIdsByProductId.get(productId);
+                if (mealIds != null) {
+                    mealIds.remove(mealId);
+                    if (mealIds.isEmpty()) {
+                        mealIdsByProductId.remove(productId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the meals using the given product.
+     * @param productId the ID of the product
+     * @return the meal IDs, in no particular order
+     */
+    int[] mealsUsing(int productId) {
+        Set<Integer> mealIds = mealIdsByProductId.get(productId);
+        if (mealIds == null) {
+            return NO_MEALS;
+        }
+        int[] ids = new int[mealIds.size()];
+        int i = 0;
+        for (int id : mealIds) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,298 @@
+package fr.oiha.mealplanner.service;
+
+import fr.oiha.mealplanner.model.RecipeLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RecipeStore keeps the recipes of the meals in append-only blob files.
+ * Each recipe is stored as its length followed by its UTF-8 bytes.
+ * The files are generations: "recipes-N.dat" starts with the number of recipes it holds,
+ * and "recipes.dat", the file of the first versions, is generation 0 and is only read.
+ * A reference holds the generation in its high bits and the offset of the recipe in the low bits,
+ * so the references of generation 0 are plain offsets.
+ * Recipes are appended to the latest generation and never moved within a file.
+ * Compaction copies the live recipes into a new generation, which replaces the previous ones
+ * once a meal snapshot referring only to the new references is written.
+ * The last recipes read are kept in a small LRU cache,
+ * since the same recipe is often read several times in a row by the user interface.
+ */
+class RecipeStore implements RecipeLoader {
+    private static final int CACHE_SIZE = 32;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int HEADER_SIZE = 8;
+    private static final Pattern GENERATION_FILE = Pattern.compile("recipes-(\\d+)\\.dat");
+
+    private final File legacyFile;
+    private final TreeSet<Integer> generations = new TreeSet<>();
+    private final Map<Integer, FileChannel> channels = new HashMap<>();
+    private final Map<Integer, Long> counts = new HashMap<>();
+    private int generation;
+    private final Map<Long, String> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Opens the store, appending to its latest generation.
+     * @param legacyFile the file of generation 0, whose directory holds the other generations
+     */
+    RecipeStore(File legacyFile) {
+        this.legacyFile = legacyFile;
+        if (legacyFile.exists()) {
+            generations.add(0);
+        }
+        File[] files = legacyFile.getAbsoluteFile().getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = GENERATION_FILE.matcher(file.getName());
+                if (matcher.matches()) {
+                    generations.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        generation = Math.max(1, generations.isEmpty() ? 0 : generations.last());
+    }
+
+    private File file(int generation) {
+        if (generation == 0) {
+            return legacyFile;
+        }
+        return new File(legacyFile.getAbsoluteFile().getParentFile(), "recipes-" + generation + ".dat");
+    }
+
+    /**
+     * Returns the channel of a generation, opening it on first use.
+     * Only the latest generation is created and written.
+     */
+    private synchronized FileChannel channel(int generation) throws IOException {
+        FileChannel channel = channels.get(generation);
+        if (channel == null) {
+            if (generation == this.generation) {
+                channel = FileChannel.open(file(generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (channel.size() < HEADER_SIZE) {
+                    writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putLong(0, 0), 0);
+                }
+                generations.add(generation);
+            } else {
+                channel = FileChannel.open(file(generation).toPath(), StandardOpenOption.READ);
+            }
+            channels.put(generation, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Returns the generation of a reference.
+     * @param reference the reference of a recipe
+     * @return the generation of the file holding the recipe
+     */
+    static int generationOf(long reference) {
+        return (int) (reference >>> OFFSET_BITS);
+    }
+
+    /**
+     * Appends a recipe at the end of the latest generation.
+     * @param recipe the recipe to store
+     * @return the reference of the stored recipe
+     * @throws IOException if the recipe cannot be written
+     */
+    synchronized long append(String recipe) throws IOException {
+        byte[] bytes = recipe.getBytes(StandardCharsets.UTF_8);
+        FileChannel channel = channel(generation);
+        long offset = channel.size();
+        if (offset + 4 + bytes.length > OFFSET_MASK) {
+            throw new IOException("Recipe file " + file(generation) + " is full");
+        }
+        writeFully(channel, ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip(), offset);
+        long count = count(generation) + 1;
+        writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putLong(0, count), 0);
+        counts.put(generation, count);
+        return ((long) generation << OFFSET_BITS) | offset;
+    }
+
+    /**
+     * Forces the appended recipes to the disk,
+     * before a snapshot referencing them is written.
+     * @throws IOException if the recipes cannot be written
+     */
+    void force() throws IOException {
+        int current;
+        synchronized (this) {
+            current = generation;
+        }
+        channel(current).force(false);
+    }
+
+    /**
+     * Returns the number of recipes held by a generation, read from its header.
+     */
+    private synchronized long count(int generation) throws IOException {
+        Long count = counts.get(generation);
+        if (count == null) {
+            FileChannel channel = channel(generation);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            count = channel.size() < HEADER_SIZE ? 0 : readFully(channel, header, 0).getLong(0);
+            counts.put(generation, count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether at least a quarter of the stored recipes are no longer referenced,
+     * and are worth a compaction.
+     * Generation 0 does not record its number of recipes, so it is always worth compacting.
+     * @param referenced the number of recipes referenced by the meals
+     * @return true if the store should be compacted
+     * @throws IOException if a generation cannot be read
+     */
+    synchronized boolean needsCompaction(int referenced) throws IOException {
+        long stored = 0;
+        for (int g : generations) {
+            if (g == 0) {
+                if (legacyFile.length() > 0) {
+                    return true;
+                }
+            } else {
+                stored += count(g);
+            }
+        }
+        long unreferenced = stored - referenced;
+        return unreferenced > 0 && unreferenced * 4 >= stored;
+    }
+
+    /**
+     * Copies the given recipes into a new generation, which becomes the one appended to.
+     * The file is written aside, forced to the disk, and moved in place atomically,
+     * so an interrupted compaction leaves the previous generations untouched.
+     * @param references the references of the live recipes
+     * @return the references of the copies, in the same order
+     * @throws IOException if a recipe cannot be read or the new generation cannot be written
+     */
+    synchronized long[] compact(long[] references) throws IOException {
+        int target = (generations.isEmpty() ? 0 : generations.last()) + 1;
+        File file = file(target);
+        File temp = new File(file.getPath() + ".tmp");
+        long[] moved = new long[references.length];
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putLong(0, references.length), 0);
+            long offset = HEADER_SIZE;
+            ByteBuffer length = ByteBuffer.allocate(4);
+            for (int i = 0; i < references.length; i++) {
+                FileChannel in = channel(generationOf(references[i]));
+                long position = references[i] & OFFSET_MASK;
+                int size = readFully(in, length.clear(), position).getInt(0);
+                if (offset + 4 + size > OFFSET_MASK) {
+                    throw new IOException("Recipe file " + file + " is full");
+                }
+                ByteBuffer record = ByteBuffer.allocate(4 + size);
+                readFully(in, record, position);
+                writeFully(out, record.flip(), offset);
+                moved[i] = ((long) target << OFFSET_BITS) | offset;
+                offset += 4 + size;
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileChannel stale = channels.remove(target);
+        if (stale != null) {
+            stale.close();
+        }
+        generation = target;
+        generations.add(target);
+        counts.put(target, (long) references.length);
+        return moved;
+    }
+
+    /**
+     * Deletes the generations no longer referenced by the meal snapshot on disk, except the latest one.
+     * Their channels are opened before, and kept open, so that the meals of older catalog versions
+     * can still read their recipes, the file being removed from the directory only.
+     * A generation that cannot be deleted is kept, and deleted after a later snapshot.
+     * @param referenced the generations referenced by the meal snapshot
+     */
+    synchronized void deleteUnreferenced(Set<Integer> referenced) {
+        for (int g : new ArrayList<>(generations)) {
+            if (g == generation || referenced.contains(g)) {
+                continue;
+            }
+            try {
+                channel(g);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (file(g).delete()) {
+                generations.remove(g);
+                counts.remove(g);
+            }
+        }
+    }
+
+    /**
+     * Loads a stored recipe, from the cache if it was read recently.
+     * @param reference the reference of the recipe
+     * @return the recipe, or null if it cannot be read
+     */
+    @Override
+    public String loadRecipe(long reference) {
+        synchronized (cache) {
+            String recipe = cache.get(reference);
+            if (recipe != null) {
+                return recipe;
+            }
+        }
+
+        try {
+            FileChannel channel = channel(generationOf(reference));
+            long position = reference & OFFSET_MASK;
+            ByteBuffer length = readFully(channel, ByteBuffer.allocate(4), position);
+            ByteBuffer bytes = readFully(channel, ByteBuffer.allocate(length.getInt(0)), position + 4);
+            String recipe = new String(bytes.array(), StandardCharsets.UTF_8);
+            synchronized (cache) {
+                cache.put(reference, recipe);
+            }
+            return recipe;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of recipe file at " + position);
+            }
+        }
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
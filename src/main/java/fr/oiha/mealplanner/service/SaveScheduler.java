@@ -0,0 +1,133 @@
+package fr.oiha.mealplanner.service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * SaveScheduler runs every write to disk on a single background thread,
+ * so saving never blocks the thread making the change.
+ * Small writes, such as journal records, run in the order they are submitted.
+ * Snapshot writes are coalesced: marking the products or meals dirty schedules one write
+ * after a short window, and every change made during the window is saved by that same write.
+ */
+class SaveScheduler {
+    /**
+     * Writes the snapshot files of the catalog.
+     */
+    interface SnapshotWriter {
+        /**
+         * Captures a consistent copy of the catalog and writes it.
+         * Called on the writer thread.
+         * @param products true if products.bin must be written
+         * @param meals true if meals.bin must be written
+         */
+        void writeSnapshot(boolean products, boolean meals);
+    }
+
+    private final SnapshotWriter snapshotWriter;
+    private final long coalesceWindowMillis;
+    private final ScheduledExecutorService executor;
+    private boolean productsDirty;
+    private boolean mealsDirty;
+    private ScheduledFuture<?> pendingSnapshot;
+
+    SaveScheduler(SnapshotWriter snapshotWriter, long coalesceWindowMillis) {
+        this.snapshotWriter = snapshotWriter;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "meal-planner-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a write on the writer thread, after every write submitted before it.
+     * @param write the write to run
+     */
+    void execute(Runnable write) {
+        executor.execute(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Runs a write on the writer thread, after every write submitted before it, and waits until it is done.
+     * Must not be called from the writer thread.
+     * @param write the write to run
+     * @return the result of the write, or false if it failed or the wait was interrupted
+     */
+    boolean executeAndWait(BooleanSupplier write) {
+        try {
+            return executor.submit(write::getAsBoolean).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    synchronized void markProductsDirty() {
+        productsDirty = true;
+        scheduleSnapshot();
+    }
+
+    synchronized void markMealsDirty() {
+        mealsDirty = true;
+        scheduleSnapshot();
+    }
+
+    private void scheduleSnapshot() {
+        if (pendingSnapshot == null) {
+            pendingSnapshot = executor.schedule(this::writeDirtySnapshot, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeDirtySnapshot() {
+        boolean products;
+        boolean meals;
+        synchronized (this) {
+            products = productsDirty;
+            meals = mealsDirty;
+            productsDirty = false;
+            mealsDirty = false;
+            pendingSnapshot = null;
+        }
+        if (products || meals) {
+            try {
+                snapshotWriter.writeSnapshot(products, meals);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Waits until every submitted write is done, and writes the dirty snapshot files right away.
+     */
+    void flush() {
+        synchronized (this) {
+            if (pendingSnapshot != null) {
+                pendingSnapshot.cancel(false);
+                pendingSnapshot = null;
+            }
+        }
+        try {
+            executor.submit(this::writeDirtySnapshot).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package fr.oiha.mealplanner.service;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * ServiceMetrics measures the operations of MealPlannerService and DataStorageService:
+ * for each operation, the number of calls, the histogram of their durations,
+ * and the number of bytes of the files they read or write.
+ * It is enabled by the "mealplanner.metrics" system property set to true, read once at startup.
+ * When it is disabled, start and record do nothing, and are removed altogether by the JIT compiler.
+ * When it is enabled, recording a call is a few uncontended atomic additions,
+ * and the metrics are registered in the platform MBean server, under the "fr.oiha.mealplanner" domain,
+ * as well as dumped as text by dump.
+ * An operation is measured as:
+ * <pre>
+ * long start = ServiceMetrics.start();
+ * ...
+ * ServiceMetrics.record(ServiceOperation.GENERATE_MEAL_PLAN, start);
+ * </pre>
+ */
+public final class ServiceMetrics implements ServiceMetricsMBean {
+    /**
+     * System property enabling the metrics.
+     */
+    public static final String METRICS_PROPERTY = "mealplanner.metrics";
+
+    private static final boolean ENABLED = Boolean.getBoolean(METRICS_PROPERTY);
+    private static final ServiceOperation[] OPERATIONS = ServiceOperation.values();
+    private static final OperationMetrics[] METRICS = new OperationMetrics[OPERATIONS.length];
+
+    static {
+        for (ServiceOperation operation : OPERATIONS) {
+            METRICS[operation.ordinal()] = new OperationMetrics(operation);
+        }
+        if (ENABLED) {
+            registerMBeans();
+        }
+    }
+
+    private ServiceMetrics() {
+    }
+
+    private static void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new ServiceMetrics(), ServiceMetricsMBean.class),
+                    new ObjectName("fr.oiha.mealplanner:type=ServiceMetrics"));
+            for (OperationMetrics metrics : METRICS) {
+                server.registerMBean(new StandardMBean(metrics, OperationMetricsMBean.class),
+                        new ObjectName("fr.oiha.mealplanner:type=Operation,name=" + metrics.getOperation().getMethodName()));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns whether the metrics are recorded.
+     * @return true if the "mealplanner.metrics" system property was true at startup
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts measuring a call.
+     * @return the start time of the call, or 0 if the metrics are disabled
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a successful call.
+     * @param operation the operation called
+     * @param start the value returned by start when the call started
+     */
+    static void record(ServiceOperation operation, long start) {
+        if (ENABLED) {
+            METRICS[operation.ordinal()].record(System.nanoTime() - start, 0, false);
+        }
+    }
+
+    /**
+     * Records a call that read or wrote bytes.
+     * @param operation the operation called
+     * @param start the value returned by start when the call started
+     * @param bytes the number of bytes read or written
+     * @param failed true if the call failed
+     */
+    static void record(ServiceOperation operation, long start, long bytes, boolean failed) {
+        if (ENABLED) {
+            METRICS[operation.ordinal()].record(System.nanoTime() - start, bytes, failed);
+        }
+    }
+
+    /**
+     * Records a successful call that read or wrote a whole file, the size of the file being its number of bytes.
+     * The size of the file is only read when the metrics are enabled.
+     * @param operation the operation called
+     * @param start the value returned by start when the call started
+     * @param file the file read or written
+     */
+    static void recordFile(ServiceOperation operation, long start, File file) {
+        if (ENABLED) {
+            METRICS[operation.ordinal()].record(System.nanoTime() - start, file.length(), false);
+        }
+    }
+
+    /**
+     * Returns the metrics of an operation.
+     * @param operation the operation
+     * @return its metrics, which stay empty while the metrics are disabled
+     */
+    public static OperationMetrics get(ServiceOperation operation) {
+        return METRICS[operation.ordinal()];
+    }
+
+    /**
+     * Returns the metrics of every operation called at least once, as a text table.
+     * @return the table, or a single line saying that the metrics are disabled
+     */
+    public static String dumpText() {
+        if (!ENABLED) {
+            return "Metrics are disabled, run with -D" + METRICS_PROPERTY + "=true to enable them\n";
+        }
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%-26s %9s %7s %10s %10s %10s %10s %10s %10s %14s%n",
+                "operation", "count", "errors", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "bytes"));
+        for (OperationMetrics metrics : METRICS) {
+            if (metrics.getCount() == 0) {
+                continue;
+            }
+            text.append(String.format(Locale.ROOT, "%-26s %9d %7d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %14d%n",
+                    metrics.getOperation().getMethodName(), metrics.getCount(), metrics.getErrorCount(),
+                    metrics.getMeanMillis(), metrics.getP50Millis(), metrics.getP90Millis(), metrics.getP99Millis(),
+                    metrics.getP999Millis(), metrics.getMaxMillis(), metrics.getBytes()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Clears the metrics of every operation.
+     */
+    public static void resetAll() {
+        for (OperationMetrics metrics : METRICS) {
+            metrics.reset();
+        }
+    }
+
+    @Override
+    public String dump() {
+        return dumpText();
+    }
+
+    @Override
+    public void reset() {
+        resetAll();
+    }
+}
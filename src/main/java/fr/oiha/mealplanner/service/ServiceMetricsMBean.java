@@ -0,0 +1,11 @@
+package fr.oiha.mealplanner.service;
+
+/**
+ * The JMX view of every operation metrics, registered as "fr.oiha.mealplanner:type=ServiceMetrics".
+ * @see ServiceMetrics
+ */
+public interface ServiceMetricsMBean {
+    String dump();
+
+    void reset();
+}
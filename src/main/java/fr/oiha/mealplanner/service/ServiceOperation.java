@@ -0,0 +1,46 @@
+package fr.oiha.mealplanner.service;
+
+/**
+ * The operations of MealPlannerService and DataStorageService measured by ServiceMetrics.
+ * @see ServiceMetrics
+ */
+public enum ServiceOperation {
+    ADD_PRODUCT("addProduct"),
+    MODIFY_PRODUCT("modifyProduct"),
+    REMOVE_PRODUCT("removeProduct"),
+    ADD_MEAL("addMeal"),
+    MODIFY_MEAL("modifyMeal"),
+    REMOVE_MEAL("removeMeal"),
+    SEARCH_PRODUCTS("searchProducts"),
+    BUILD_PRODUCT_NAME_INDEX("buildProductNameIndex"),
+    GENERATE_MEAL_PLAN("generateMealPlan"),
+    GENERATE_MEAL_PLANS("generateMealPlans"),
+    GENERATE_SHOPPING_LIST("generateShoppingList"),
+    EXPORT_CATALOG("exportCatalogToJson"),
+    EXPORT_MARKDOWN("exportMealPlanToMarkdown"),
+    SAVE_PRODUCTS("saveProducts"),
+    LOAD_PRODUCTS("loadProducts"),
+    SAVE_MEALS("saveMeals"),
+    LOAD_MEALS("loadMeals"),
+    SAVE_PRODUCT_SNAPSHOT("saveProductSnapshot"),
+    LOAD_PRODUCT_SNAPSHOT("loadProductSnapshot"),
+    SAVE_MEAL_SNAPSHOT("saveMealSnapshot"),
+    LOAD_MEAL_SNAPSHOT("loadMealSnapshot"),
+    SAVE_PRODUCT_CHANGES("saveProductChanges"),
+    LOAD_PRODUCT_CHANGES("loadProductChanges"),
+    COMPACT_PRODUCT_CATALOG("compactProductCatalog");
+
+    private final String methodName;
+
+    ServiceOperation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * Returns the name of the method performing the operation, used in the dump and as the JMX name.
+     * @return the method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
@@ -0,0 +1,24 @@
+package fr.oiha.mealplanner.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the generation of a shopping list.
+ */
+@Name("fr.oiha.mealplanner.ShoppingList")
+@Label("Shopping List Generation")
+@Category({"Meal Planner", "Service"})
+@Description("Aggregation of the ingredients of a meal plan")
+@StackTrace(false)
+class ShoppingListEvent extends Event {
+    @Label("Meals")
+    int meals;
+
+    @Label("Items")
+    int items;
+}
@@ -0,0 +1,52 @@
+package fr.oiha.mealplanner.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.File;
+
+/**
+ * Flight recorder event of a load or save of DataStorageService, or of the export of a meal plan.
+ */
+@Name("fr.oiha.mealplanner.Storage")
+@Label("Storage Operation")
+@Category({"Meal Planner", "Storage"})
+@Description("Load or save of a catalog file, or export of a meal plan")
+@StackTrace(false)
+class StorageEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event and commits it, if it is enabled and lasted long enough for the recording.
+     * The size of the file is only read when the event is committed.
+     * @param operation the operation
+     * @param file the file read or written
+     * @param failed true if the operation failed
+     */
+    void complete(ServiceOperation operation, File file, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation.getMethodName();
+            this.file = file.getPath();
+            this.bytes = failed ? 0 : file.length();
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package fr.oiha.mealplanner.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive int keys to primitive double values.
+ * Uses open addressing with linear probing, so neither keys nor values are boxed.
+ * It is not thread-safe.
+ */
+public class IntDoubleMap {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private double[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public IntDoubleMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntDoubleMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     * @param key the key to look up
+     * @param defaultValue the value to return if the key is not present
+     * @return the value, or defaultValue if the key is not present
+     */
+    public double getOrDefault(int key, double defaultValue) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the given key to the given value, replacing any previous value.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(int key, double value) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, key, value);
+    }
+
+    /**
+     * Adds the given amount to the value mapped to the given key.
+     * A key that is not present starts from zero.
+     * @param key the key
+     * @param amount the amount to add
+     * @return the new value
+     */
+    public double addTo(int key, double amount) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] += amount;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, key, amount);
+        return amount;
+    }
+
+    /**
+     * Removes the mapping of the given key.
+     * The following entries of the probe sequence are shifted back,
+     * so no tombstones are left in the table.
+     * @param key the key to remove
+     * @return true if the key was present
+     */
+    public boolean remove(int key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Calls the given action for every entry of the map, in no particular order.
+     * @param action the action to call
+     */
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void insert(int slot, int key, double value) {
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+    }
+
+    private void shiftBack(int slot) {
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (used[next]) {
+            int ideal = hash(keys[next]) & mask;
+            // Move the entry if the free slot lies between its ideal slot and its current slot
+            if (((next - ideal) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[free] = false;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new double[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(DEFAULT_CAPACITY, capacity);
+    }
+
+    /**
+     * Action called with the key and the value of an entry.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, double value);
+    }
+}
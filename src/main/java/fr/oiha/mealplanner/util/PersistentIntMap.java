@@ -0,0 +1,431 @@
+package fr.oiha.mealplanner.util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Immutable map from primitive int keys to objects.
+ * It is a trie of 32-way nodes indexed by 5 bits of the key at each level,
+ * each node storing only its present children in a compact array described by a bitmap.
+ * Putting or removing a key returns a new map that copies the nodes on the path to the key,
+ * at most 7 of them, and shares every other node with the previous map,
+ * so keeping older versions of a large map is cheap.
+ * Maps are immutable and can be read by any number of threads without locking.
+ * A Builder applies many changes in a row without copying the nodes it created itself.
+ * @param <V> the type of the values
+ */
+public final class PersistentIntMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     * @param <V> the type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     * @param key the key to look up
+     * @return the value, or null if the key is not present
+     */
+    public V get(int key) {
+        return find(root, key);
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with the given key mapped to the given value.
+     * @param key the key
+     * @param value the value, which must not be null
+     * @return the new map, or this map if the key is already mapped to this value
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, 0, key, value, null, added);
+        return newRoot == root ? this : new PersistentIntMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the given key.
+     * @param key the key to remove
+     * @return the new map, or this map if the key is not present
+     */
+    public PersistentIntMap<V> remove(int key) {
+        boolean[] removed = new boolean[1];
+        Node newRoot = remove(root, 0, key, null, removed);
+        return removed[0] ? new PersistentIntMap<>(newRoot, size - 1) : this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Calls the given action for every value of the map, in no particular order.
+     * @param action the action to call
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        forEachValue(root, action);
+    }
+
+    /**
+     * Returns a read-only view of the values of the map, in no particular order.
+     * @return the values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns a builder starting from the content of this map.
+     * This map is not changed by the builder.
+     * @return the builder
+     */
+    public Builder<V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    /**
+     * Applies changes to a map in place, for the nodes it created itself,
+     * which avoids copying the same nodes again and again while loading many entries.
+     * The nodes shared with a built map are copied before being changed, as in PersistentIntMap.
+     * It is not thread-safe.
+     * @param <V> the type of the values
+     */
+    public static final class Builder<V> {
+        private Node root;
+        private int size;
+        private Object edit = new Object();
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public V get(int key) {
+            return find(root, key);
+        }
+
+        public boolean containsKey(int key) {
+            return get(key) != null;
+        }
+
+        public Builder<V> put(int key, V value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null values are not supported");
+            }
+            boolean[] added = new boolean[1];
+            root = PersistentIntMap.put(root, 0, key, value, edit, added);
+            if (added[0]) {
+                size++;
+            }
+            return this;
+        }
+
+        public Builder<V> remove(int key) {
+            boolean[] removed = new boolean[1];
+            root = PersistentIntMap.remove(root, 0, key, edit, removed);
+            if (removed[0]) {
+                size--;
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns a map with the content of the builder.
+         * The builder can still be used afterwards, the nodes of the map are then copied before being changed.
+         * @return the map
+         */
+        public PersistentIntMap<V> build() {
+            edit = new Object();
+            return size == 0 ? empty() : new PersistentIntMap<>(root, size);
+        }
+    }
+
+    /**
+     * A node of the trie.
+     * Slot i holds either a Leaf or a child Node, for the i-th bit set in the bitmap.
+     * Nodes are only changed in place by the builder that created them, identified by edit.
+     * The slots of a node created by a builder have room for a few more children,
+     * so that loading many keys does not copy the slots at each insertion.
+     */
+    private static final class Node {
+        private final Object edit;
+        private int bitmap;
+        private Object[] slots;
+
+        Node(Object edit, int bitmap, Object[] slots) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int count() {
+            return Integer.bitCount(bitmap);
+        }
+
+        private boolean editable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+
+        Node withSlot(Object edit, int index, Object slot) {
+            if (editable(edit)) {
+                slots[index] = slot;
+                return this;
+            }
+            Object[] copy = Arrays.copyOf(slots, count());
+            copy[index] = slot;
+            return new Node(edit, bitmap, copy);
+        }
+
+        Node insert(Object edit, int bit, int index, Object slot) {
+            int count = count();
+            if (editable(edit) && count < slots.length) {
+                System.arraycopy(slots, index, slots, index + 1, count - index);
+                slots[index] = slot;
+                bitmap |= bit;
+                return this;
+            }
+            Object[] copy = new Object[edit != null ? Math.min(1 << BITS, 2 * (count + 1)) : count + 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            copy[index] = slot;
+            System.arraycopy(slots, index, copy, index + 1, count - index);
+            if (editable(edit)) {
+                slots = copy;
+                bitmap |= bit;
+                return this;
+            }
+            return new Node(edit, bitmap | bit, copy);
+        }
+
+        Node delete(Object edit, int bit, int index) {
+            int count = count();
+            if (editable(edit)) {
+                System.arraycopy(slots, index + 1, slots, index, count - index - 1);
+                slots[count - 1] = null;
+                bitmap &= ~bit;
+                return this;
+            }
+            Object[] copy = new Object[count - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, count - index - 1);
+            return new Node(edit, bitmap & ~bit, copy);
+        }
+    }
+
+    private static final class Leaf {
+        private final int key;
+        private final Object value;
+
+        Leaf(int key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static int bit(int key, int shift) {
+        return 1 << ((key >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Node node, int key) {
+        int shift = 0;
+        while (node != null) {
+            int bit = bit(key, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[index(node.bitmap, bit)];
+            if (slot instanceof Leaf leaf) {
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    private static Node put(Node node, int shift, int key, Object value, Object edit, boolean[] added) {
+        int bit = bit(key, shift);
+        if (node == null) {
+            added[0] = true;
+            return new Node(edit, bit, new Object[]{new Leaf(key, value)});
+        }
+        int index = index(node.bitmap, bit);
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            return node.insert(edit, bit, index, new Leaf(key, value));
+        }
+        Object slot = node.slots[index];
+        if (slot instanceof Leaf leaf) {
+            if (leaf.key == key) {
+                return leaf.value == value ? node : node.withSlot(edit, index, new Leaf(key, value));
+            }
+            added[0] = true;
+            return node.withSlot(edit, index, split(leaf, new Leaf(key, value), shift + BITS, edit));
+        }
+        Node child = put((Node) slot, shift + BITS, key, value, edit, added);
+        return child == slot ? node : node.withSlot(edit, index, child);
+    }
+
+    /**
+     * Creates the nodes holding two leaves whose keys share the bits below the given shift.
+     * Two different keys differ in at least one of their 32 bits, so this stops at shift 30 at the latest.
+     */
+    private static Node split(Leaf a, Leaf b, int shift, Object edit) {
+        int bitA = bit(a.key, shift);
+        int bitB = bit(b.key, shift);
+        if (bitA == bitB) {
+            return new Node(edit, bitA, new Object[]{split(a, b, shift + BITS, edit)});
+        }
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[]{a, b} : new Object[]{b, a};
+        return new Node(edit, bitA | bitB, slots);
+    }
+
+    /**
+     * Removes a key below the given node.
+     * @return the node without the key, the same node if the key is not present, or null if the node is left empty
+     */
+    private static Node remove(Node node, int shift, int key, Object edit, boolean[] removed) {
+        if (node == null) {
+            return null;
+        }
+        int bit = bit(key, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = index(node.bitmap, bit);
+        Object slot = node.slots[index];
+        Object newSlot;
+        if (slot instanceof Leaf leaf) {
+            if (leaf.key != key) {
+                return node;
+            }
+            removed[0] = true;
+            newSlot = null;
+        } else {
+            Node child = remove((Node) slot, shift + BITS, key, edit, removed);
+            if (!removed[0]) {
+                return node;
+            }
+            // A child left with a single leaf is replaced by the leaf, so the trie stays as shallow as possible
+            newSlot = child != null && child.count() == 1 && child.slots[0] instanceof Leaf ? child.slots[0] : child;
+        }
+        if (newSlot != null) {
+            return node.withSlot(edit, index, newSlot);
+        }
+        if (node.count() == 1) {
+            return null;
+        }
+        return node.delete(edit, bit, index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEachValue(Node node, Consumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        for (int i = 0, count = node.count(); i < count; i++) {
+            Object slot = node.slots[i];
+            if (slot instanceof Leaf leaf) {
+                action.accept((V) leaf.value);
+            } else {
+                forEachValue((Node) slot, action);
+            }
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        // A path from the root holds at most 7 nodes, one per 5 bits of the key
+        private final Node[] nodes = new Node[8];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Leaf next;
+
+        ValueIterator(Node root) {
+            if (root != null) {
+                nodes[++depth] = root;
+            }
+            next = advance();
+        }
+
+        private Leaf advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (positions[depth] == node.count()) {
+                    depth--;
+                    continue;
+                }
+                Object slot = node.slots[positions[depth]++];
+                if (slot instanceof Leaf leaf) {
+                    return leaf;
+                }
+                nodes[++depth] = (Node) slot;
+                positions[depth] = 0;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) next.value;
+            next = advance();
+            return value;
+        }
+    }
+}